@@ -0,0 +1,25 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs JMH with the usual command line options, always adding the GC
+ * profiler so allocation rates are reported next to throughput, e.g.
+ *
+ *   java -jar target/benchmarks.jar SolverBenchmark -p engine=BITMASK,AUTOMATON
+ */
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+
+}
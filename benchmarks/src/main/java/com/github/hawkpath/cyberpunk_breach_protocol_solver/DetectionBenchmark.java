@@ -0,0 +1,115 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of each stage of {@link Detector#detect()} on a corpus of
+ * screenshots (see {@link DetectionCorpus}), and of the whole detection.
+ * Each benchmark goes through the corpus frame by frame. Run through
+ * {@link BenchmarkMain} to get bytes allocated per operation as well, e.g.
+ *
+ *   java -jar target/benchmarks.jar DetectionBenchmark -p corpus=path/to/screenshots
+ *
+ * The detect benchmark runs Tesseract, so it needs the tessdata folder in the
+ * working directory. See {@link DetectionRunner} for percentiles and accuracy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectionBenchmark {
+
+  @Param({"corpus"})
+  public String corpus;
+
+  private List<DetectionCorpus.Frame> frames;
+  private FrameSource replay;
+  private Detector detector;
+  // Where the boxes are in each frame, found once up front
+  private Point[] matrixStarts;
+  private Rectangle[] matrixBoxes;
+  private BufferedImage[] binarizedMatrices;
+  private BufferedImage matrixImage;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    DetectionCorpus loaded = new DetectionCorpus(new File(corpus));
+    frames = loaded.getFrames();
+    replay = loaded.replay();
+    detector = new Detector(replay);
+
+    matrixStarts = new Point[frames.size()];
+    matrixBoxes = new Rectangle[frames.size()];
+    binarizedMatrices = new BufferedImage[frames.size()];
+    for (int i=0; i<frames.size(); i++) {
+      BufferedImage image = frames.get(i).image;
+      ScreenScaler scaler = new ScreenScaler(
+          Detector.basisDim, new Dimension(image.getWidth(), image.getHeight())
+      );
+      matrixStarts[i] = scaler.scale(Detector.matrixFindBoxStart);
+      matrixBoxes[i] = Detector.findBox(image, matrixStarts[i], 10, Detector.BOX_THRESHOLD);
+      if (matrixBoxes[i] == null)
+        throw new IllegalStateException("No matrix box in " + frames.get(i).name);
+      binarizedMatrices[i] = ImageProcessing.thresholdInverted(
+          image, matrixBoxes[i], Detector.MATRIX_THRESHOLD, null
+      );
+    }
+    next = 0;
+  }
+
+  private int nextFrame() {
+    int frame = next;
+    next = (next + 1) % frames.size();
+    return frame;
+  }
+
+  /**
+   * What every binarization cost before it was restricted to the boxes
+   */
+  @Benchmark
+  public Object binarizeFullFrame() {
+    BufferedImage image = ImageProcessing.copy(frames.get(nextFrame()).image);
+    ImageProcessing.threshold(image, Detector.MATRIX_THRESHOLD);
+    ImageProcessing.invert(image);
+    return image;
+  }
+
+  @Benchmark
+  public Object binarizeMatrix() {
+    int frame = nextFrame();
+    matrixImage = ImageProcessing.thresholdInverted(
+        frames.get(frame).image, matrixBoxes[frame], Detector.MATRIX_THRESHOLD, matrixImage
+    );
+    return matrixImage;
+  }
+
+  @Benchmark
+  public Object findMatrixBox() {
+    int frame = nextFrame();
+    return Detector.findBox(frames.get(frame).image, matrixStarts[frame], 10, Detector.BOX_THRESHOLD);
+  }
+
+  @Benchmark
+  public Object segmentMatrix() {
+    return GridSegmenter.grid(binarizedMatrices[nextFrame()]);
+  }
+
+  @Benchmark
+  public Object detect() throws IOException {
+    replay.advance();
+    return detector.detect();
+  }
+
+}
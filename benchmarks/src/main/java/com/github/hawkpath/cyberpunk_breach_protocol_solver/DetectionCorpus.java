@@ -0,0 +1,175 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Breach screenshots to benchmark detection on, loaded into memory. A corpus
+ * is a directory of screenshots (at any resolutions) with an optional
+ * labels.jsonl next to them, giving what each one should be detected as in
+ * the batch puzzle format plus the screenshot's file name:
+ *
+ *   {"file": "1440p-01.png", "matrix": [["1C", "55"], ...], "sequences": [...], "bufferSize": 6}
+ *
+ * Screenshots without a label are timed but not scored.
+ */
+public class DetectionCorpus {
+
+  public static final String LABELS_FILE = "labels.jsonl";
+
+  public static class Frame {
+    public final String name;
+    public final BufferedImage image;
+    // What the frame should be detected as, or null if it isn't labeled
+    public final DetectionResult label;
+
+    Frame(String name, BufferedImage image, DetectionResult label) {
+      this.name = name;
+      this.image = image;
+      this.label = label;
+    }
+  }
+
+  private final List<Frame> frames = new ArrayList<>();
+
+  public DetectionCorpus(File directory) throws IOException {
+    Map<String, DetectionResult> labels = readLabels(new File(directory, LABELS_FILE));
+    try (ImageFrameSource source = new ImageFrameSource(directory)) {
+      while (source.advance()) {
+        String name = source.getCurrentFile().getName();
+        BufferedImage image = source.capture(new Rectangle(source.getScreenSize()));
+        frames.add(new Frame(name, image, labels.get(name)));
+      }
+    }
+    if (frames.isEmpty())
+      throw new IOException("No screenshots in " + directory);
+  }
+
+  private static Map<String, DetectionResult> readLabels(File path) throws IOException {
+    Map<String, DetectionResult> labels = new HashMap<>();
+    if (!path.exists())
+      return labels;
+    int lineNumber = 0;
+    for (String line : Files.readAllLines(path.toPath(), StandardCharsets.UTF_8)) {
+      lineNumber++;
+      if (line.trim().isEmpty())
+        continue;
+      try {
+        Object json = JsonReader.parse(line);
+        if (!(json instanceof Map) || !(((Map<?, ?>) json).get("file") instanceof String))
+          throw new IllegalArgumentException("a label needs a \"file\"");
+        Map<?, ?> object = (Map<?, ?>) json;
+        labels.put((String) object.get("file"), BatchSolver.readPuzzle(object));
+      } catch (IllegalArgumentException e) {
+        throw new IOException(path + " line " + lineNumber + ": " + e.getMessage(), e);
+      }
+    }
+    return labels;
+  }
+
+  public List<Frame> getFrames() {
+    return frames;
+  }
+
+  /**
+   * Replays the corpus to a {@link Detector}, going round again after the
+   * last frame
+   */
+  public FrameSource replay() {
+    return new FrameSource() {
+      private int index = -1;
+
+      @Override
+      public boolean advance() {
+        index = (index + 1) % frames.size();
+        return true;
+      }
+
+      @Override
+      public Dimension getScreenSize() {
+        BufferedImage image = frames.get(index).image;
+        return new Dimension(image.getWidth(), image.getHeight());
+      }
+
+      @Override
+      public BufferedImage capture(Rectangle region) {
+        return FrameSource.crop(frames.get(index).image, region);
+      }
+    };
+  }
+
+  /**
+   * Codes detected right, out of how many there should be
+   */
+  public static class Score {
+    public long correctCells = 0;
+    public long labeledCells = 0;
+    public long correctFrames = 0;
+    public long labeledFrames = 0;
+
+    /**
+     * Score a detection of a frame against its label. A frame is correct if
+     * its matrix and sequences have the right shape and codes, and its buffer
+     * size is right.
+     * @param detected the detection, or null if nothing was detected
+     */
+    public void add(DetectionResult detected, DetectionResult label) {
+      long correct = 0;
+      long cells = countCells(label.matrix) + countCells(label.sequences);
+      if (detected != null) {
+        correct += countCorrect(detected.matrix, label.matrix);
+        correct += countCorrect(detected.sequences, label.sequences);
+      }
+      correctCells += correct;
+      labeledCells += cells;
+      labeledFrames++;
+      if (detected != null && correct == cells && detected.bufferSize == label.bufferSize
+          && sameShape(detected.matrix, label.matrix)
+          && sameShape(detected.sequences, label.sequences))
+        correctFrames++;
+    }
+
+    private static long countCells(OCRArray2D array) {
+      long cells = 0;
+      for (List<OCRArrayNode> row : array)
+        cells += row.size();
+      return cells;
+    }
+
+    /**
+     * Count the codes in the same place with the same value
+     */
+    private static long countCorrect(OCRArray2D detected, OCRArray2D label) {
+      long correct = 0;
+      for (int y=0; y<Math.min(detected.getHeight(), label.getHeight()); y++) {
+        List<OCRArrayNode> detectedRow = detected.getRow(y);
+        List<OCRArrayNode> labelRow = label.getRow(y);
+        for (int x=0; x<Math.min(detectedRow.size(), labelRow.size()); x++) {
+          if (detectedRow.get(x).value.equals(labelRow.get(x).value))
+            correct++;
+        }
+      }
+      return correct;
+    }
+
+    private static boolean sameShape(OCRArray2D detected, OCRArray2D label) {
+      if (detected.getHeight() != label.getHeight())
+        return false;
+      for (int y=0; y<label.getHeight(); y++) {
+        if (detected.getRow(y).size() != label.getRow(y).size())
+          return false;
+      }
+      return true;
+    }
+  }
+
+}
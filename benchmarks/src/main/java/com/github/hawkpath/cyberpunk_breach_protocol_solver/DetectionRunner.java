@@ -0,0 +1,144 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs whole detections over a corpus of screenshots (see
+ * {@link DetectionCorpus}) and reports the p50/p99 latency of each stage,
+ * bytes allocated per detection, and how much was detected right against
+ * the corpus labels:
+ *
+ *   java -cp target/benchmarks.jar com.github.hawkpath.cyberpunk_breach_protocol_solver.DetectionRunner
+ *       [--passes N] [--warmup N] CORPUS
+ *
+ * Detection runs Tesseract, so it needs the tessdata folder in the working
+ * directory.
+ */
+public class DetectionRunner {
+
+  public static void main(String[] args) throws IOException {
+    int passes = 5;
+    int warmup = 1;
+    String corpusPath = null;
+    try {
+      for (int i=0; i<args.length; i++) {
+        switch (args[i]) {
+          case "--passes":
+            passes = Integer.parseInt(optionValue(args, i++));
+            break;
+          case "--warmup":
+            warmup = Integer.parseInt(optionValue(args, i++));
+            break;
+          default:
+            if (corpusPath != null || args[i].startsWith("--"))
+              throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            corpusPath = args[i];
+        }
+      }
+      if (corpusPath == null)
+        throw new IllegalArgumentException("Missing corpus directory");
+      if (passes < 1 || warmup < 0)
+        throw new IllegalArgumentException("--passes must be positive and --warmup not negative");
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Usage: DetectionRunner [--passes N] [--warmup N] CORPUS");
+      System.exit(2);
+      return;
+    }
+
+    // Stage timings come from the detector's metrics, which have to be on
+    // before it's first used
+    System.setProperty(Metrics.PROPERTY, "true");
+    DetectionCorpus corpus = new DetectionCorpus(new File(corpusPath));
+    FrameSource replay = corpus.replay();
+    Detector detector = new Detector(replay);
+    List<DetectionCorpus.Frame> frames = corpus.getFrames();
+
+    LinkedHashMap<String, List<Long>> stages = new LinkedHashMap<>();
+    List<Long> totals = new ArrayList<>();
+    long allocated = 0;
+    DetectionCorpus.Score score = new DetectionCorpus.Score();
+
+    for (int pass=0; pass<warmup+passes; pass++) {
+      boolean measured = pass >= warmup;
+      for (DetectionCorpus.Frame frame : frames) {
+        replay.advance();
+        long bytes = allocatedBytes();
+        long time = System.nanoTime();
+        DetectionResult detection = detector.detect();
+        time = System.nanoTime() - time;
+        bytes = allocatedBytes() - bytes;
+        if (!measured)
+          continue;
+
+        totals.add(time);
+        allocated += bytes;
+        for (Map.Entry<String, Long> stage : detector.getMetrics().getStages().entrySet())
+          stages.computeIfAbsent(stage.getKey(), k -> new ArrayList<>()).add(stage.getValue());
+        if (frame.label != null)
+          score.add(detection, frame.label);
+      }
+    }
+
+    System.out.printf(
+        "%d frames x %d passes%n%-28s %8s %10s %10s%n",
+        frames.size(), passes, "stage", "count", "p50 ms", "p99 ms"
+    );
+    for (Map.Entry<String, List<Long>> stage : stages.entrySet())
+      printLatency(stage.getKey(), stage.getValue());
+    printLatency("detect", totals);
+    System.out.printf("%nAllocated per detection: %.1f KB%n", allocated / 1024.0 / totals.size());
+    if (score.labeledFrames > 0) {
+      System.out.printf(
+          "Codes right: %d/%d (%.2f%%), frames right: %d/%d (%.2f%%)%n",
+          score.correctCells, score.labeledCells, 100.0 * score.correctCells / score.labeledCells,
+          score.correctFrames, score.labeledFrames, 100.0 * score.correctFrames / score.labeledFrames
+      );
+    } else {
+      System.out.println("No labels, so accuracy isn't measured");
+    }
+  }
+
+  private static void printLatency(String name, List<Long> nanos) {
+    long[] sorted = new long[nanos.size()];
+    for (int i=0; i<sorted.length; i++)
+      sorted[i] = nanos.get(i);
+    Arrays.sort(sorted);
+    System.out.printf(
+        "%-28s %8d %10.3f %10.3f%n",
+        name, sorted.length, percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6
+    );
+  }
+
+  /**
+   * Nearest-rank percentile of sorted values
+   */
+  private static long percentile(long[] sorted, double p) {
+    int rank = (int) Math.ceil(p * sorted.length);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+
+  /**
+   * Bytes allocated by this thread so far, or 0 if the JVM can't tell
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean)
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    return 0;
+  }
+
+  private static String optionValue(String[] args, int i) throws IllegalArgumentException {
+    if (i + 1 >= args.length)
+      throw new IllegalArgumentException("Missing value for " + args[i]);
+    return args[i + 1];
+  }
+
+}
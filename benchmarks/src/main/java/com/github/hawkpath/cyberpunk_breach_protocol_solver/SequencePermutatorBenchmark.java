@@ -0,0 +1,52 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting the first permutation (what most solves need) and of
+ * going through every permutation (what unsolvable puzzles need)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequencePermutatorBenchmark {
+
+  @Param({"1", "2", "3", "4", "5", "6"})
+  public int sequences;
+
+  /** -1 doesn't skip any permutations for not fitting in the buffer */
+  @Param({"-1", "8"})
+  public int bufferSize;
+
+  @Param({"42"})
+  public long seed;
+
+  private OCRArray2D sequenceArray;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    sequenceArray = new PuzzleGenerator(seed).next(6, sequences, 8).sequences;
+  }
+
+  @Benchmark
+  public Object firstPermutation() {
+    Iterator<SequencePermutation> iterator =
+        new SequencePermutator(sequenceArray, bufferSize).iterator();
+    return iterator.hasNext() ? iterator.next() : null;
+  }
+
+  @Benchmark
+  public void allPermutations(Blackhole blackhole) {
+    for (SequencePermutation permutation : new SequencePermutator(sequenceArray, bufferSize)) {
+      blackhole.consume(permutation);
+    }
+  }
+
+}
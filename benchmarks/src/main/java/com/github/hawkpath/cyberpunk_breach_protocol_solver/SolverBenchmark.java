@@ -0,0 +1,62 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Solver#solve()} on generated puzzles, for every
+ * engine. Each configuration solves the same seeded set of puzzles in turn.
+ * Run through {@link BenchmarkMain} to get allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+  private static final int PUZZLES = 64;
+
+  @Param({"5", "6", "7", "8"})
+  public int size;
+
+  @Param({"1", "2", "3", "4"})
+  public int sequences;
+
+  @Param({"4", "5", "6", "7", "8", "9"})
+  public int bufferSize;
+
+  @Param({"RECURSIVE", "BITMASK", "MEMOIZED", "AUTOMATON"})
+  public Solver.Engine engine;
+
+  @Param({"42"})
+  public long seed;
+
+  private DetectionResult[] puzzles;
+  private Solver solver;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    PuzzleGenerator generator = new PuzzleGenerator(seed);
+    puzzles = new DetectionResult[PUZZLES];
+    for (int i=0; i<PUZZLES; i++) {
+      puzzles[i] = generator.next(size, sequences, bufferSize);
+    }
+    solver = new Solver();
+    solver.setEngine(engine);
+    next = 0;
+  }
+
+  @Benchmark
+  public Object solve() {
+    DetectionResult puzzle = puzzles[next];
+    next = (next + 1) % PUZZLES;
+    solver.setAll(puzzle);
+    solver.solve();
+    return solver.getSolution();
+  }
+
+}
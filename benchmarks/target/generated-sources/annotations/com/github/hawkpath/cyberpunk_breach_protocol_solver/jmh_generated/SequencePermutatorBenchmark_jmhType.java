@@ -0,0 +1,4 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver.jmh_generated;
+public class SequencePermutatorBenchmark_jmhType extends SequencePermutatorBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,262 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Search engine which looks for every sequence in a single search. Instead of
+ * trying one permutation of the sequences at a time, each step of the path
+ * advances a {@link SequenceAutomaton}, which tells us all of the sequences
+ * the path has completed. The best path found is kept, and branches which
+ * can't possibly complete a better set of sequences are cut off: a sequence
+ * is only counted as still possible if the rest of it fits in the buffer
+ * left, given how much of it the path already ends with.
+ *
+ * Sets of sequences are ranked by
+ * {@link SequenceAutomaton#priorityScore(int, int)}, or by the total of a
+ * reward given for each sequence, e.g. when one sequence is worth more than
+ * two others together.
+ *
+ * Like {@link BitmaskSearch}, cells are encoded as {@code y * width + x} and
+ * used cells are tracked in a {@code long} bitmask.
+ *
+ * Given an {@link Incumbent}, the search stops once its deadline passes and
+ * the best path found so far is kept.
+ *
+ * The search can also carry on from cells already picked into the buffer
+ * (see {@link #setPrefix(List)}). The automaton state they lead to holds the
+ * progress made on every sequence, so only the rest of the buffer is
+ * searched.
+ */
+class AutomatonSearch {
+
+  private final OCRArray2D matrix;
+  private final SequenceAutomaton automaton;
+  private final int width;
+  private final int height;
+  private final int bufferSize;
+  private final int sequenceCount;
+  private final int allSequences;
+  // Reward of each sequence, or null to rank by priority
+  private final long[] rewards;
+  // Automaton symbol of each cell
+  private final int[] symbols;
+  // Sequences which may still be completed, indexed by state and remaining buffer
+  private final int[] reachable;
+
+  // Cells already in the buffer
+  private int[] prefix = new int[0];
+  private final int[] path;
+  private final int[] bestPath;
+  private int bestLength;
+  private int bestCompleted;
+  private long bestScore;
+  private Incumbent incumbent = null;
+  private final SolverMetrics metrics = Metrics.ENABLED ? new SolverMetrics() : null;
+
+  public AutomatonSearch(OCRArray2D matrix, List<? extends List<OCRArrayNode>> sequences, int bufferSize) {
+    this(matrix, sequences, bufferSize, null);
+  }
+
+  /**
+   * @param rewards reward for completing each sequence, in the same order as
+   *                `sequences`, or null to rank sets of sequences by priority
+   */
+  public AutomatonSearch(
+      OCRArray2D matrix, List<? extends List<OCRArrayNode>> sequences, int bufferSize,
+      long[] rewards
+  ) {
+    if (!BitmaskSearch.supports(matrix))
+      throw new IllegalArgumentException("matrix must be a grid of at most 64 cells");
+    this.matrix = matrix;
+    this.automaton = new SequenceAutomaton(sequences);
+    this.width = matrix.getWidth();
+    this.height = matrix.getHeight();
+    this.bufferSize = Math.max(bufferSize, 0);
+    this.sequenceCount = automaton.getSequenceCount();
+    this.allSequences = automaton.allSequences();
+    if (rewards != null) {
+      if (rewards.length != sequenceCount)
+        throw new IllegalArgumentException("expected a reward for each sequence");
+      for (long reward : rewards) {
+        if (reward < 0)
+          throw new IllegalArgumentException("rewards must not be negative");
+      }
+    }
+    this.rewards = rewards;
+
+    symbols = new int[width * height];
+    for (int y=0; y<height; y++) {
+      for (int x=0; x<width; x++) {
+        symbols[y * width + x] = automaton.symbolOf(matrix.get(x, y).value);
+      }
+    }
+
+    int states = automaton.getStateCount();
+    reachable = new int[states * (this.bufferSize + 1)];
+    for (int state=0; state<states; state++) {
+      for (int remaining=0; remaining<=this.bufferSize; remaining++) {
+        int mask = 0;
+        for (int seq=0; seq<sequenceCount; seq++) {
+          if (automaton.getSequenceLength(seq) - automaton.getProgress(state, seq) <= remaining)
+            mask |= 1 << seq;
+        }
+        reachable[state * (this.bufferSize + 1) + remaining] = mask;
+      }
+    }
+
+    path = new int[this.bufferSize];
+    bestPath = new int[this.bufferSize];
+  }
+
+  public static boolean supports(OCRArray2D matrix, List<? extends List<OCRArrayNode>> sequences) {
+    return BitmaskSearch.supports(matrix)
+        && sequences.size() <= SequenceAutomaton.MAX_SEQUENCES;
+  }
+
+  /**
+   * Stop searching once the incumbent's deadline passes
+   */
+  public void setIncumbent(Incumbent incumbent) {
+    this.incumbent = incumbent;
+  }
+
+  /**
+   * Start from cells already picked into the buffer, in order. They must
+   * follow the row/column rules, which is up to the caller to check.
+   */
+  public void setPrefix(List<OCRArrayNode> cells) {
+    if (cells.size() > bufferSize)
+      throw new IllegalArgumentException("prefix is longer than the buffer");
+    prefix = new int[cells.size()];
+    for (int i=0; i<prefix.length; i++) {
+      prefix[i] = cells.get(i).y * width + cells.get(i).x;
+    }
+  }
+
+  /**
+   * Search for the path completing the best set of sequences. The path
+   * starts with the prefix, if there is one.
+   * @return true if a path completing at least one sequence was found, in
+   *         which case it is available through {@link #getPath()}
+   */
+  public boolean search() {
+    int state = SequenceAutomaton.ROOT;
+    int completed = automaton.getOutput(state);
+    int lastCell = 0;
+    long used = 0L;
+    for (int i=0; i<prefix.length; i++) {
+      lastCell = prefix[i];
+      state = automaton.next(state, symbols[lastCell]);
+      completed |= automaton.getOutput(state);
+      used |= 1L << lastCell;
+      path[i] = lastCell;
+      bestPath[i] = lastCell;
+    }
+
+    bestLength = prefix.length;
+    bestCompleted = completed;
+    bestScore = score(bestCompleted);
+    if (bestCompleted != allSequences)
+      search(prefix.length, lastCell, state, bestCompleted, used);
+    return bestLength > 0 && bestCompleted != 0;
+  }
+
+  public ArrayList<OCRArrayNode> getPath() {
+    ArrayList<OCRArrayNode> nodes = new ArrayList<>(bestLength);
+    for (int i=0; i<bestLength; i++) {
+      nodes.add(matrix.get(bestPath[i] % width, bestPath[i] / width));
+    }
+    return nodes;
+  }
+
+  /**
+   * @return counters of the search, or null if {@link Metrics} are disabled
+   */
+  public SolverMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Get the sequences completed by the path, as a bitmask where bit 0 is the
+   * sequence with the highest priority
+   */
+  public int getCompleted() {
+    return bestCompleted;
+  }
+
+  /**
+   * Rank a set of completed sequences. Adding a sequence to a set never
+   * lowers its score, so the score of everything still possible bounds what
+   * a branch can achieve.
+   */
+  private long score(int completed) {
+    if (rewards == null)
+      return SequenceAutomaton.priorityScore(completed, sequenceCount);
+    long total = 0;
+    for (int left = completed; left != 0; left &= left - 1) {
+      total += rewards[Integer.numberOfTrailingZeros(left)];
+    }
+    return total;
+  }
+
+  /**
+   * @return true once every sequence has been completed or time has run
+   *         out, to stop searching
+   */
+  private boolean search(int bufferIndex, int lastCell, int state, int completed, long used) {
+    if (incumbent != null && incumbent.checkExpired())
+      return true;
+    int remaining = bufferSize - bufferIndex;
+    if (remaining == 0)
+      return false;
+    if (Metrics.ENABLED)
+      metrics.nodes++;
+    int optimistic = completed | reachable[state * (bufferSize + 1) + remaining];
+    if (score(optimistic) <= bestScore) {
+      // Nothing down this branch can beat what we already have
+      if (Metrics.ENABLED)
+        metrics.boundPrunes++;
+      return false;
+    }
+
+    int first, step, count;
+    if ((bufferIndex & 1) == 0) {
+      first = lastCell - lastCell % width;
+      step = 1;
+      count = width;
+    } else {
+      first = lastCell % width;
+      step = width;
+      count = height;
+    }
+
+    for (int i=0, cell=first; i<count; i++, cell+=step) {
+      if ((used & (1L << cell)) != 0) {
+        if (Metrics.ENABLED)
+          metrics.containsRejections++;
+        continue;
+      }
+
+      int nextState = automaton.next(state, symbols[cell]);
+      int nextCompleted = completed | automaton.getOutput(nextState);
+      path[bufferIndex] = cell;
+
+      long nextScore = score(nextCompleted);
+      if (nextScore > bestScore) {
+        bestScore = nextScore;
+        bestCompleted = nextCompleted;
+        bestLength = bufferIndex + 1;
+        System.arraycopy(path, 0, bestPath, 0, bestLength);
+        if (nextCompleted == allSequences)
+          return true;
+      }
+
+      if (search(bufferIndex + 1, cell, nextState, nextCompleted, used | (1L << cell)))
+        return true;
+    }
+
+    return false;
+  }
+
+}
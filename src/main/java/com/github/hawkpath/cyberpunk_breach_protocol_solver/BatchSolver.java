@@ -0,0 +1,447 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves puzzles without a screen, keyboard hook or overlay.
+ *
+ * Puzzles are read as JSON lines, e.g.
+ *
+ *   {"id": "a", "matrix": [["1C", "55"], ["BD", "E9"]], "sequences": [["1C", "BD"]], "bufferSize": 4}
+ *
+ * where "id" is optional (a string or an integer) and codes may be hex
+ * strings or numbers. A
+ * "rewards" array may give the reward of each sequence, for the automaton
+ * engine (see {@link Solver#setSequenceRewards(long[])}), and a "buffer"
+ * array the [x, y] cells already picked, for the solution to carry on from.
+ * One result is written per puzzle, in input order:
+ *
+ *   {"line": 1, "id": "a", "solution": [{"x": 0, "y": 0, "code": "1C"}, ...], "timeMicros": 35}
+ *
+ * with "solution" null if there is none, or {"line": 1, "error": "..."} if
+ * the puzzle couldn't be read or solving it failed. "partial": true is added to solutions found
+ * by a solver which ran out of time (see --time-limit), and the solver's
+ * counters as "metrics" with --metrics (see {@link SolverMetrics}). Puzzles
+ * are solved on a pool of worker threads, with a bounded number of them in
+ * flight, so memory use doesn't depend on the size of the input.
+ */
+public class BatchSolver {
+
+  final static Logger logger = LoggerFactory.getLogger(BatchSolver.class.getName());
+
+  private static final int SOLVED = 0;
+  private static final int UNSOLVED = 1;
+  private static final int ERROR = 2;
+  // Far beyond any buffer in the game, and small enough that the engines'
+  // per-step arrays can't overflow
+  static final int MAX_BUFFER_SIZE = 64;
+  // Integers above this can't all be told apart as doubles
+  private static final double MAX_EXACT_INTEGER = 1L << 53;
+
+  private static class Result {
+    final int status;
+    final String json;
+
+    Result(int status, String json) {
+      this.status = status;
+      this.json = json;
+    }
+  }
+
+  private final ExecutorService workers;
+  private final int window;
+  private final ThreadLocal<Solver> solvers;
+
+  private long solved = 0;
+  private long unsolved = 0;
+  private long errors = 0;
+
+  public BatchSolver(int threads, Solver.Engine engine) {
+    this(threads, engine, 0, false);
+  }
+
+  /**
+   * @param timeLimit milliseconds each puzzle may take, or 0 for no limit
+   *                  (see {@link Solver#setTimeLimit(long)})
+   * @param shortestPath whether to shorten solutions (see
+   *                     {@link Solver#setShortestPath(boolean)})
+   */
+  public BatchSolver(int threads, Solver.Engine engine, long timeLimit, boolean shortestPath) {
+    if (threads < 1)
+      throw new IllegalArgumentException("threads must be positive");
+    workers = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "batch-solver");
+      thread.setDaemon(true);
+      return thread;
+    });
+    window = threads * 4;
+    solvers = ThreadLocal.withInitial(() -> {
+      Solver solver = new Solver();
+      solver.setEngine(engine);
+      solver.setTimeLimit(timeLimit);
+      solver.setShortestPath(shortestPath);
+      return solver;
+    });
+  }
+
+  /**
+   * Solve every puzzle in `in`, writing the results to `out` as they're
+   * finished
+   */
+  public void run(InputStream in, OutputStream out) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    ArrayDeque<Future<Result>> inFlight = new ArrayDeque<>(window);
+    long startTime = System.nanoTime();
+
+    try {
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().isEmpty())
+          continue;
+        if (inFlight.size() == window)
+          write(writer, inFlight.poll());
+        final String puzzle = line;
+        final int number = lineNumber;
+        inFlight.add(workers.submit(() -> solve(number, puzzle)));
+      }
+      while (!inFlight.isEmpty())
+        write(writer, inFlight.poll());
+      writer.flush();
+    } finally {
+      for (Future<Result> future : inFlight)
+        future.cancel(true);
+      workers.shutdownNow();
+    }
+
+    logger.info(
+        "Solved {}, unsolvable {}, errors {} in {} ms", new Object[] {
+            solved, unsolved, errors, (System.nanoTime() - startTime) / 1_000_000
+        }
+    );
+  }
+
+  private void write(Writer writer, Future<Result> future) throws IOException {
+    Result result;
+    try {
+      result = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while solving", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Unexpected error while solving", e.getCause());
+    }
+    if (result.status == ERROR)
+      errors++;
+    else if (result.status == UNSOLVED)
+      unsolved++;
+    else
+      solved++;
+    writer.write(result.json);
+    writer.write('\n');
+    // Stream results out rather than waiting for the buffer to fill up
+    writer.flush();
+  }
+
+  private Result solve(int lineNumber, String line) {
+    StringBuilder sb = new StringBuilder(256);
+    sb.append("{\"line\": ").append(lineNumber);
+
+    DetectionResult puzzle;
+    long[] rewards;
+    try {
+      Object json = JsonReader.parse(line);
+      if (!(json instanceof Map))
+        throw new IllegalArgumentException("Expected an object");
+      Map<?, ?> object = (Map<?, ?>) json;
+      Object id = object.get("id");
+      if (id != null) {
+        String idJson = toJson(id);
+        sb.append(", \"id\": ").append(idJson);
+      }
+      puzzle = readPuzzle(object);
+      rewards = readRewards(object.get("rewards"));
+    } catch (IllegalArgumentException e) {
+      sb.append(", \"error\": \"")
+          .append(StringEscapeUtils.escapeJson(e.getMessage()))
+          .append("\"}");
+      return new Result(ERROR, sb.toString());
+    } catch (RuntimeException | StackOverflowError e) {
+      // Checks above should catch anything malformed, but one bad line still
+      // shouldn't stop the rest of the batch
+      logger.warn("Failed to read line " + lineNumber, e);
+      sb.append(", \"error\": \"")
+          .append(StringEscapeUtils.escapeJson("Failed to read: " + e))
+          .append("\"}");
+      return new Result(ERROR, sb.toString());
+    }
+
+    Solver solver = solvers.get();
+    long startTime = System.nanoTime();
+    List<OCRArrayNode> solution;
+    try {
+      solver.setSequenceRewards(rewards);
+      solver.setAll(puzzle);
+      solver.solve();
+      solution = solver.getSolution();
+    } catch (RuntimeException | OutOfMemoryError | StackOverflowError e) {
+      // One bad puzzle shouldn't stop the rest of the batch
+      logger.warn("Failed to solve line " + lineNumber, e);
+      sb.append(", \"error\": \"")
+          .append(StringEscapeUtils.escapeJson("Failed to solve: " + e))
+          .append("\"}");
+      return new Result(ERROR, sb.toString());
+    }
+    long time = System.nanoTime() - startTime;
+
+    sb.append(", \"solution\": ");
+    if (solution == null) {
+      sb.append("null");
+    } else {
+      sb.append('[');
+      for (int i=0; i<solution.size(); i++) {
+        OCRArrayNode node = solution.get(i);
+        if (i > 0)
+          sb.append(", ");
+        sb.append(String.format("{\"x\": %d, \"y\": %d, \"code\": \"%02X\"}", node.x, node.y, node.value));
+      }
+      sb.append(']');
+      if (solver.isPartial())
+        sb.append(", \"partial\": true");
+    }
+    sb.append(", \"timeMicros\": ").append(time / 1000);
+    SolverMetrics metrics = solver.getMetrics();
+    if (metrics != null) {
+      sb.append(String.format(
+          ", \"metrics\": {\"nodes\": %d, \"bridges\": %d, \"overflowPrunes\": %d, "
+              + "\"boundPrunes\": %d, \"containsRejections\": %d, \"permutations\": %d}",
+          metrics.getNodes(), metrics.getBridges(), metrics.getOverflowPrunes(),
+          metrics.getBoundPrunes(), metrics.getContainsRejections(), metrics.getPermutations()
+      ));
+    }
+    sb.append('}');
+    return new Result(solution == null ? UNSOLVED : SOLVED, sb.toString());
+  }
+
+  /**
+   * Write an id back out as JSON
+   * @throws IllegalArgumentException if it isn't a string or an integer which
+   *                                  a double holds exactly
+   */
+  private static String toJson(Object value) throws IllegalArgumentException {
+    if (value instanceof String)
+      return '"' + StringEscapeUtils.escapeJson((String) value) + '"';
+    if (value instanceof Double) {
+      double number = (Double) value;
+      if (number == Math.rint(number) && Math.abs(number) <= MAX_EXACT_INTEGER)
+        return Long.toString((long) number);
+    }
+    throw new IllegalArgumentException("id must be a string or an integer");
+  }
+
+  static DetectionResult readPuzzle(Map<?, ?> object) throws IllegalArgumentException {
+    OCRArray2D matrix = readArray(object.get("matrix"), "matrix");
+    OCRArray2D sequences = readArray(object.get("sequences"), "sequences");
+    Object bufferSize = object.get("bufferSize");
+    if (!(bufferSize instanceof Double) || (Double) bufferSize < 1)
+      throw new IllegalArgumentException("bufferSize must be a positive number");
+    if ((Double) bufferSize > MAX_BUFFER_SIZE)
+      throw new IllegalArgumentException("bufferSize must be at most " + MAX_BUFFER_SIZE);
+    if (matrix.getHeight() == 0)
+      throw new IllegalArgumentException("matrix must not be empty");
+    for (int y=0; y<matrix.getHeight(); y++) {
+      if (matrix.getRow(y).isEmpty() || matrix.getRow(y).size() != matrix.getRow(0).size())
+        throw new IllegalArgumentException("matrix rows must all be the same, non-zero length");
+    }
+    if (sequences.getHeight() == 0)
+      throw new IllegalArgumentException("sequences must not be empty");
+    for (int y=0; y<sequences.getHeight(); y++) {
+      if (sequences.getRow(y).isEmpty())
+        throw new IllegalArgumentException("sequences must not be empty");
+    }
+    int size = ((Double) bufferSize).intValue();
+    List<OCRArrayNode> buffer = readBuffer(object.get("buffer"), matrix);
+    Solver.checkBuffer(matrix, size, buffer);
+    return new DetectionResult(matrix, sequences, size, buffer);
+  }
+
+  private static List<OCRArrayNode> readBuffer(Object json, OCRArray2D matrix)
+      throws IllegalArgumentException {
+    if (json == null)
+      return Collections.emptyList();
+    if (!(json instanceof List))
+      throw new IllegalArgumentException("buffer must be an array of [x, y] cells");
+    List<OCRArrayNode> buffer = new ArrayList<>();
+    for (Object cell : (List<?>) json) {
+      if (!(cell instanceof List) || ((List<?>) cell).size() != 2
+          || !(((List<?>) cell).get(0) instanceof Double)
+          || !(((List<?>) cell).get(1) instanceof Double))
+        throw new IllegalArgumentException("buffer must be an array of [x, y] cells");
+      int x = ((Double) ((List<?>) cell).get(0)).intValue();
+      int y = ((Double) ((List<?>) cell).get(1)).intValue();
+      if (x < 0 || y < 0 || y >= matrix.getHeight() || x >= matrix.getRow(y).size())
+        throw new IllegalArgumentException("buffer cell [" + x + ", " + y + "] is outside the matrix");
+      buffer.add(matrix.get(x, y));
+    }
+    return buffer;
+  }
+
+  private static long[] readRewards(Object json) throws IllegalArgumentException {
+    if (json == null)
+      return null;
+    if (!(json instanceof List))
+      throw new IllegalArgumentException("rewards must be an array of numbers");
+    List<?> list = (List<?>) json;
+    long[] rewards = new long[list.size()];
+    for (int i=0; i<rewards.length; i++) {
+      Object reward = list.get(i);
+      if (!(reward instanceof Double) || (Double) reward < 0)
+        throw new IllegalArgumentException("rewards must not be negative numbers");
+      rewards[i] = ((Double) reward).longValue();
+    }
+    return rewards;
+  }
+
+  private static OCRArray2D readArray(Object json, String name) throws IllegalArgumentException {
+    if (!(json instanceof List))
+      throw new IllegalArgumentException(name + " must be an array of arrays");
+    OCRArray2D array = new OCRArray2D();
+    for (Object row : (List<?>) json) {
+      if (!(row instanceof List))
+        throw new IllegalArgumentException(name + " must be an array of arrays");
+      array.addRow();
+      for (Object code : (List<?>) row) {
+        array.add(readCode(code, name), null);
+      }
+    }
+    return array;
+  }
+
+  private static int readCode(Object code, String name) throws IllegalArgumentException {
+    if (code instanceof Double)
+      return ((Double) code).intValue();
+    if (code instanceof String) {
+      try {
+        return Integer.parseInt((String) code, 16);
+      } catch (NumberFormatException e) {
+        // Fall through
+      }
+    }
+    throw new IllegalArgumentException("Bad code " + code + " in " + name);
+  }
+
+  private static String optionValue(String[] args, int i) throws IllegalArgumentException {
+    if (i + 1 >= args.length)
+      throw new IllegalArgumentException("Missing value for " + args[i]);
+    return args[i + 1];
+  }
+
+  private static void printUsage() {
+    System.err.println(
+        "Usage: batch [--threads N] [--engine ENGINE] [--time-limit MS] [--shortest]\n"
+            + "             [--metrics] [--out FILE] [FILE]\n"
+            + "Reads puzzles from FILE, or stdin if it's missing or \"-\", and writes\n"
+            + "results to stdout unless --out is given."
+    );
+  }
+
+  public static void main(String[] args) {
+    // The config is optional here, for running outside the app's folder
+    HashMap<String, String> config = new File("./config.txt").exists()
+        ? Utils.loadConfig("./config.txt") : new HashMap<>();
+    int threads = Runtime.getRuntime().availableProcessors();
+    Solver.Engine engine = Solver.Engine.RECURSIVE;
+    if (config.containsKey("solverEngine")) {
+      try {
+        engine = Solver.Engine.valueOf(config.get("solverEngine").toUpperCase());
+      } catch (IllegalArgumentException e) {
+        logger.warn("Unknown solver engine \"{}\", using {}", config.get("solverEngine"), engine);
+      }
+    }
+    if (Boolean.parseBoolean(config.get("metrics")))
+      System.setProperty(Metrics.PROPERTY, "true");
+    long timeLimit = 0;
+    boolean shortestPath = Boolean.parseBoolean(config.get("shortestPath"));
+    String inPath = null;
+    String outPath = null;
+
+    try {
+      for (int i=0; i<args.length; i++) {
+        switch (args[i]) {
+          case "--threads":
+            threads = Integer.parseInt(optionValue(args, i++));
+            break;
+          case "--engine":
+            engine = Solver.Engine.valueOf(optionValue(args, i++).toUpperCase());
+            break;
+          case "--time-limit":
+            timeLimit = Long.parseLong(optionValue(args, i++));
+            break;
+          case "--metrics":
+            System.setProperty(Metrics.PROPERTY, "true");
+            break;
+          case "--shortest":
+            shortestPath = true;
+            break;
+          case "--out":
+            outPath = optionValue(args, i++);
+            break;
+          default:
+            if (inPath != null || args[i].startsWith("--"))
+              throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            inPath = args[i];
+        }
+      }
+      if (threads < 1)
+        throw new IllegalArgumentException("--threads must be positive");
+      if (timeLimit < 0)
+        throw new IllegalArgumentException("--time-limit must not be negative");
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      printUsage();
+      System.exit(2);
+      return;
+    }
+
+    BatchSolver batch = new BatchSolver(threads, engine, timeLimit, shortestPath);
+    try (
+        InputStream in = inPath == null || inPath.equals("-")
+            ? System.in : new FileInputStream(inPath);
+        OutputStream out = outPath == null
+            ? System.out : new FileOutputStream(outPath)
+    ) {
+      batch.run(in, out);
+    } catch (IOException e) {
+      logger.error("Batch solve failed", e);
+      System.exit(1);
+    }
+  }
+
+}
@@ -0,0 +1,300 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recursive search engine equivalent to {@link IterativeSearch}, for
+ * matrices small enough for the set of used cells to fit in a {@code long}
+ * bitmask. Cells are encoded as {@code y * width + x} and the path is kept in
+ * a preallocated {@code int[]}, so nothing is allocated per search node.
+ *
+ * Only matrices with at most 64 cells can be represented; see
+ * {@link #supports(OCRArray2D)}.
+ *
+ * Given a {@link TranspositionTable}, states which were already searched
+ * without success (reached again through a different path) are skipped.
+ * This doesn't change which path is found, only how fast. A state only
+ * depends on the sequences left to find, so the table is shared by every
+ * {@link SequencePermutation} of a puzzle: [A, B, C] and [B, A, C] meet the
+ * same states once they're looking for C.
+ *
+ * A search can be told to give up once a shared cutoff drops below its
+ * priority (see {@link ParallelPermutationSearch}), or once the deadline of
+ * an {@link Incumbent} passes. In the latter case, the path with the best
+ * sequences completed so far is left in the incumbent.
+ */
+class BitmaskSearch {
+
+  static final int MAX_CELLS = Long.SIZE;
+  // Subtrees closer to the end of the buffer than this are cheaper to search
+  // again than to look up
+  private static final int MIN_MEMOIZED_DEPTH = 4;
+  // Permutation suffixes are packed 5 bits per sequence into a state
+  private static final int MAX_SHARED_SUFFIX = 8;
+  private static final long UNSHARED_SUFFIX = 1L << 43;
+  private static final int MAX_PACKED_LENGTH = 127;
+  // Number of nodes between checks of the cutoff, minus one
+  private static final int CUTOFF_CHECK_MASK = 0xFF;
+
+  private final OCRArray2D matrix;
+  private final int width;
+  private final int height;
+  private final int bufferSize;
+  private final int[] values;
+  private final int[] path;
+  private int pathLength = 0;
+  private final TranspositionTable table;
+
+  private int[][] sequences;
+  private int[] overlaps;
+  // Identifies the sequences left to find from each index of the permutation
+  private long[] suffixCodes;
+  private boolean memoizable;
+
+  private AtomicInteger cutoff = null;
+  private int priority = 0;
+  private Incumbent incumbent = null;
+  // Sequences completed by finishing each prefix of the permutation
+  private int[] prefixMasks;
+  private int nodes = 0;
+  private boolean aborted = false;
+  private final SolverMetrics metrics = Metrics.ENABLED ? new SolverMetrics() : null;
+
+  public BitmaskSearch(OCRArray2D matrix, int bufferSize) {
+    this(matrix, bufferSize, null);
+  }
+
+  public BitmaskSearch(OCRArray2D matrix, int bufferSize, TranspositionTable table) {
+    if (!supports(matrix))
+      throw new IllegalArgumentException("matrix must be a grid of at most 64 cells");
+    this.matrix = matrix;
+    this.width = matrix.getWidth();
+    this.height = matrix.getHeight();
+    this.bufferSize = bufferSize;
+
+    values = new int[width * height];
+    for (int y=0; y<height; y++) {
+      for (int x=0; x<width; x++) {
+        values[y * width + x] = matrix.get(x, y).value;
+      }
+    }
+    path = new int[Math.max(bufferSize, 0)];
+    this.table = table;
+    if (table != null)
+      // Entries from another puzzle don't apply to this one
+      table.clear();
+  }
+
+  public static boolean supports(OCRArray2D matrix) {
+    if (!matrix.isGrid() || matrix.getHeight() == 0)
+      return false;
+    int cells = matrix.getWidth() * matrix.getHeight();
+    return cells > 0 && cells <= MAX_CELLS;
+  }
+
+  /**
+   * Give up searching once {@code cutoff} drops below {@code priority}
+   */
+  public void setCutoff(AtomicInteger cutoff, int priority) {
+    this.cutoff = cutoff;
+    this.priority = priority;
+  }
+
+  /**
+   * Give up searching once the incumbent's deadline passes, and offer it
+   * every path that completes some sequences
+   */
+  public void setIncumbent(Incumbent incumbent) {
+    this.incumbent = incumbent;
+  }
+
+  /**
+   * @return true if the last search gave up because of the cutoff or
+   *         deadline, rather than because there is no path
+   */
+  public boolean isAborted() {
+    return aborted;
+  }
+
+  /**
+   * Search for a path which completes all of the given sequences in order.
+   * @return true if a path was found, in which case it is available through
+   *         {@link #getPath()}
+   */
+  public boolean search(SequencePermutation sequences) {
+    int count = sequences.size();
+    this.sequences = new int[count][];
+    this.overlaps = new int[count];
+    memoizable = table != null && bufferSize <= MAX_PACKED_LENGTH;
+    for (int i=0; i<count; i++) {
+      List<OCRArrayNode> seq = sequences.get(i);
+      if (seq.size() > MAX_PACKED_LENGTH)
+        memoizable = false;
+      int[] seqValues = new int[seq.size()];
+      for (int j=0; j<seqValues.length; j++) {
+        seqValues[j] = seq.get(j).value;
+      }
+      this.sequences[i] = seqValues;
+      overlaps[i] = sequences.overlap(i);
+    }
+
+    if (memoizable)
+      encodeSuffixes(sequences);
+
+    if (incumbent != null) {
+      prefixMasks = new int[count + 1];
+      for (int i=0; i<count; i++) {
+        prefixMasks[i + 1] = prefixMasks[i] | 1 << sequences.sequenceIndex(i);
+      }
+    }
+
+    pathLength = 0;
+    aborted = false;
+    if (Metrics.ENABLED)
+      metrics.permutations++;
+    return search(0, 0, 0, 0, 0L);
+  }
+
+  public ArrayList<OCRArrayNode> getPath() {
+    return getPath(pathLength);
+  }
+
+  /**
+   * @return counters of every search so far, or null if {@link Metrics} are
+   *         disabled
+   */
+  public SolverMetrics getMetrics() {
+    return metrics;
+  }
+
+  private ArrayList<OCRArrayNode> getPath(int pathLength) {
+    ArrayList<OCRArrayNode> nodes = new ArrayList<>(pathLength);
+    for (int i=0; i<pathLength; i++) {
+      nodes.add(matrix.get(path[i] % width, path[i] / width));
+    }
+    return nodes;
+  }
+
+  private void encodeSuffixes(SequencePermutation sequences) {
+    int count = sequences.size();
+    suffixCodes = new long[count];
+
+    boolean shared = count <= MAX_SHARED_SUFFIX;
+    for (int i=0; shared && i<count; i++) {
+      shared = sequences.sequenceIndex(i) < 31;
+    }
+
+    if (shared) {
+      long code = 0;
+      for (int i=count-1; i>=0; i--) {
+        code = code << 5 | (sequences.sequenceIndex(i) + 1);
+        suffixCodes[i] = code;
+      }
+    } else {
+      // Too many sequences to pack, so entries can only be shared within
+      // this search
+      table.clear();
+      for (int i=0; i<count; i++) {
+        suffixCodes[i] = UNSHARED_SUFFIX | i;
+      }
+    }
+  }
+
+  /**
+   * Pack everything but the used cells which determines the outcome of a
+   * search from this point
+   */
+  private long packState(int bufferIndex, int seqIndex, int seqValueIndex, int lastCell) {
+    return suffixCodes[seqIndex] << 20 | bufferIndex << 13 | seqValueIndex << 6 | lastCell;
+  }
+
+  private boolean search(
+      int bufferIndex, int seqIndex, int seqValueIndex, int lastCell, long used
+  ) {
+    if (cutoff != null && (++nodes & CUTOFF_CHECK_MASK) == 0 && cutoff.get() < priority)
+      aborted = true;
+    if (incumbent != null && incumbent.checkExpired())
+      aborted = true;
+    if (aborted)
+      return false;
+    if (Metrics.ENABLED)
+      metrics.nodes++;
+
+    int[] seq = sequences[seqIndex];
+
+    while (seqValueIndex == seq.length) {
+      // Finished this sequence; move to the next one, skipping its overlap
+      seqIndex++;
+      if (incumbent != null && incumbent.improves(prefixMasks[seqIndex]))
+        incumbent.offer(prefixMasks[seqIndex], getPath(bufferIndex));
+      if (seqIndex == sequences.length) {
+        pathLength = bufferIndex;
+        return true;
+      }
+      seq = sequences[seqIndex];
+      seqValueIndex = overlaps[seqIndex];
+    }
+
+    if (seq.length - seqValueIndex + bufferIndex > bufferSize) {
+      if (Metrics.ENABLED)
+        metrics.overflowPrunes++;
+      return false;
+    }
+
+    long state = 0;
+    boolean memoize = memoizable && bufferSize - bufferIndex >= MIN_MEMOIZED_DEPTH;
+    if (memoize) {
+      state = packState(bufferIndex, seqIndex, seqValueIndex, lastCell);
+      if (table.contains(used, state))
+        return false;
+    }
+
+    // Walk the current row (horizontal) or column (vertical) as a strided
+    // range of cell indices
+    int first, step, count;
+    if ((bufferIndex & 1) == 0) {
+      first = lastCell - lastCell % width;
+      step = 1;
+      count = width;
+    } else {
+      first = lastCell % width;
+      step = width;
+      count = height;
+    }
+
+    int value = seq[seqValueIndex];
+    for (int i=0, cell=first; i<count; i++, cell+=step) {
+      if (values[cell] != value)
+        continue;
+      if ((used & (1L << cell)) != 0) {
+        if (Metrics.ENABLED)
+          metrics.containsRejections++;
+        continue;
+      }
+      path[bufferIndex] = cell;
+      if (search(bufferIndex + 1, seqIndex, seqValueIndex + 1, cell, used | (1L << cell)))
+        return true;
+    }
+
+    if (seqValueIndex == 0 && bufferIndex + seq.length < bufferSize) {
+      // Bridge through this row/col exactly like IterativeSearch does
+      // (including leaving out its last cell)
+      for (int i=0, cell=first; i<count - 1; i++, cell+=step) {
+        if (bufferIndex != 0 && cell == lastCell)
+          continue;
+        if (Metrics.ENABLED)
+          metrics.bridges++;
+        path[bufferIndex] = cell;
+        if (search(bufferIndex + 1, seqIndex, 0, cell, used | (1L << cell)))
+          return true;
+      }
+    }
+
+    if (memoize && !aborted)
+      table.store(used, state, bufferSize - bufferIndex);
+    return false;
+  }
+
+}
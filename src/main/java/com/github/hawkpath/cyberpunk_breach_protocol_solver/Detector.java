@@ -4,22 +4,39 @@ import net.sourceforge.tess4j.ITessAPI;
 import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.Word;
 import org.apache.commons.text.similarity.LevenshteinDistance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.RasterFormatException;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 class DetectionResult {
   OCRArray2D matrix, sequences;
   int bufferSize;
+  // Cells of the matrix already picked into the buffer, in order
+  List<OCRArrayNode> buffer;
 
   public DetectionResult(OCRArray2D matrix, OCRArray2D sequences, int bufferSize) {
+    this(matrix, sequences, bufferSize, Collections.<OCRArrayNode>emptyList());
+  }
+
+  public DetectionResult(
+      OCRArray2D matrix, OCRArray2D sequences, int bufferSize, List<OCRArrayNode> buffer
+  ) {
     this.matrix = matrix;
     this.sequences = sequences;
     this.bufferSize = bufferSize;
+    this.buffer = buffer;
   }
 }
 
@@ -30,11 +47,9 @@ class ScreenScaler {
   private float scaleX;
   private float scaleY;
 
-  public ScreenScaler(Dimension basis) {
+  public ScreenScaler(Dimension basis, Dimension screen) {
     this.basis = basis;
-    DisplayMode display = GraphicsEnvironment.getLocalGraphicsEnvironment()
-        .getDefaultScreenDevice().getDisplayMode();
-    screen = new Dimension(display.getWidth(), display.getHeight());
+    this.screen = screen;
     scaleX = (float) screen.width / basis.width;
     scaleY = (float) screen.height / basis.height;
   }
@@ -69,46 +84,126 @@ class ScreenScaler {
 
 public class Detector {
 
-  private static final int BOX_THRESHOLD = 80;
-  private static final int MATRIX_THRESHOLD = 110;
+  final static Logger logger = LoggerFactory.getLogger(Detector.class.getName());
+
+  static final int BOX_THRESHOLD = 80;
+  static final int MATRIX_THRESHOLD = 110;
   private static final int MATRIX_THRESHOLD_MAX = 140;
   private static final int MATRIX_THRESHOLD_DELTA = 15;
-  private static final int SEQUENCES_THRESHOLD = 130;
-  private static final ArrayList<String> possibleCells = new ArrayList<>(Arrays.asList(
+  static final int SEQUENCES_THRESHOLD = 130;
+  static final ArrayList<String> possibleCells = new ArrayList<>(Arrays.asList(
       "FF", "55", "1C", "BD", "E9", "7A"
   ));
   private static final LevenshteinDistance leven = new LevenshteinDistance(4);
 
-  private static final Dimension basisDim = new Dimension(2560, 1440);
-  private static final Point matrixFindBoxStart = new Point(655, 465);
-  private static final Point sequencesFindBoxStart = new Point(1484, 450);
-  private static final Point bufferFindBoxStart = new Point(1300, 250);
-
-  private ScreenScaler screenScaler;
-  private Tesseract tess;
-  private Robot robot;
+  static final Dimension basisDim = new Dimension(2560, 1440);
+  static final Point matrixFindBoxStart = new Point(655, 465);
+  static final Point sequencesFindBoxStart = new Point(1484, 450);
+  static final Point bufferFindBoxStart = new Point(1300, 250);
+
+  private File tessdata;
+  private TesseractPool tessPool = null;
+  private GlyphClassifier glyphClassifier = null;
+  private RecognitionCache recognitionCache = null;
+  private FrameSource frameSource;
+  private DetectorMetrics metrics = null;
+  // Binarized crops, reused between detections since the boxes are usually
+  // the same size every time
+  private BufferedImage matrixImage = null;
+  private BufferedImage sequencesImage = null;
+  // Matrix thresholds tried at once, each worker with its own crop since it
+  // can't be shared between threads
+  private int parallelism = 1;
+  private ExecutorService workers = null;
+  private ThreadLocal<BufferedImage[]> workerImage = null;
 
+  /**
+   * Create a detector which reads the screen
+   */
   public Detector() throws AWTException {
-    robot = new Robot();
-    screenScaler = new ScreenScaler(basisDim);
-    initTesseract();
+    this(new RobotFrameSource());
   }
 
-  private void initTesseract() {
-    tess = new Tesseract();
+  /**
+   * Create a detector which reads the current frame of a source, which the
+   * caller advances
+   */
+  public Detector(FrameSource frameSource) {
+    this.frameSource = frameSource;
 
     // https://github.com/tesseract-ocr/tessdata_best
-    File tessdata = Utils.getRelativeFile("./tessdata");
+    tessdata = Utils.getRelativeFile("./tessdata");
     if (tessdata == null) {
       System.err.println("Missing tessdata folder.");
       System.exit(1);
     }
-    tess.setDatapath(tessdata.getAbsolutePath());
+  }
 
-    tess.setTessVariable("load_system_dawg", "false");
-    tess.setTessVariable("load_freq_dawg", "false");
-    tess.setTessVariable("tessedit_char_whitelist", " 1579ABCDEF");
-    tess.setTessVariable("user_defined_dpi", "300");
+  /**
+   * Start loading Tesseract in the background, so the first detection doesn't
+   * have to wait for it. Otherwise it's loaded by the first detection.
+   */
+  public void warmUp() {
+    getTessPool();
+  }
+
+  private synchronized TesseractPool getTessPool() {
+    if (tessPool == null)
+      tessPool = new TesseractPool(tessdata, parallelism);
+    return tessPool;
+  }
+
+  /**
+   * Get the possible cell values as numbers
+   */
+  static int[] possibleCellValues() {
+    int[] values = new int[possibleCells.size()];
+    for (int i=0; i<values.length; i++)
+      values[i] = Integer.parseInt(possibleCells.get(i), 16);
+    return values;
+  }
+
+  /**
+   * Set a classifier to read boxes with instead of Tesseract when it can, or
+   * null to always use Tesseract. Boxes Tesseract reads are used to teach it.
+   */
+  public void setGlyphClassifier(GlyphClassifier glyphClassifier) {
+    this.glyphClassifier = glyphClassifier;
+  }
+
+  /**
+   * Set a cache of what codes have been read as, so codes seen before aren't
+   * read again, or null to read every code
+   */
+  public void setRecognitionCache(RecognitionCache recognitionCache) {
+    this.recognitionCache = recognitionCache;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Set the number of matrix thresholds to binarize and OCR at once. With more
+   * than one thread, all of the thresholds are tried together and the first
+   * well-formed grid in threshold order is used, so a bad first threshold
+   * doesn't cost a Tesseract call per threshold in latency. Each thread loads
+   * its own Tesseract (see {@link TesseractPool}).
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be positive");
+    if (parallelism == this.parallelism)
+      return;
+    this.parallelism = parallelism;
+    if (workers != null) {
+      workers.shutdown();
+      workers = null;
+    }
+    if (tessPool != null) {
+      tessPool.close();
+      tessPool = null;
+    }
   }
 
   /**
@@ -118,40 +213,43 @@ public class Detector {
    * the right and down to find the dimensions of the box. Each time an edge
    * is found, the cursor moves inward by `padding` pixels to account for edges
    * that aren't perfectly straight.
-   * @param img the image to use
+   * The image is binarized on the fly, so only the pixels along the search
+   * are looked at.
+   * @param img the capture to use
    * @param start a point in the top-middle(ish) of the box
    * @param padding how many pixels to move inward after finding a border (to
    *                account for any non-straight-line borders in the binarized
    *                image).
+   * @param threshold brightness above which a pixel is part of a border
    */
-  private Rectangle findBox(BufferedImage img, Point start, int padding) {
+  static Rectangle findBox(BufferedImage img, Point start, int padding, int threshold) {
     Point p;
     Point topLeft = new Point();
     Dimension dim = new Dimension();
 
     // Search left
-    p = ImageProcessing.searchDirectionallyUntil(img, start, -1, 0, 0x000000);
+    p = ImageProcessing.searchDirectionallyUntilBrighter(img, start, -1, 0, threshold);
     if (p == null)
       return null;
     p.translate(padding, 0);
     topLeft.x = p.x;
 
     // Search up
-    p = ImageProcessing.searchDirectionallyUntil(img, p, 0, -1, 0x000000);
+    p = ImageProcessing.searchDirectionallyUntilBrighter(img, p, 0, -1, threshold);
     if (p == null)
       return null;
     p.translate(0, padding);
     topLeft.y = p.y;
 
     // Search right
-    p = ImageProcessing.searchDirectionallyUntil(img, topLeft, 1, 0, 0x000000);
+    p = ImageProcessing.searchDirectionallyUntilBrighter(img, topLeft, 1, 0, threshold);
     if (p == null)
       return null;
     p.translate(-padding, 0);
     dim.width = p.x - topLeft.x;
 
     // Search down
-    p = ImageProcessing.searchDirectionallyUntil(img, topLeft, 0, 1, 0x000000);
+    p = ImageProcessing.searchDirectionallyUntilBrighter(img, topLeft, 0, 1, threshold);
     if (p == null)
       return null;
     p.translate(0, -padding);
@@ -173,24 +271,311 @@ public class Detector {
     return (int)(innerWidth * 18/23 / innerHeight);
   }
 
-  private OCRArray2D doOCR(BufferedImage img, Rectangle boundingBox) {
+  /**
+   * Read a binarized box with the glyph classifier if there is one and it's
+   * sure of every code, otherwise with Tesseract
+   * @param img the binarized contents of the bounding box
+   * @param boundingBox where the image was cropped from in the capture
+   * @param isMatrix whether the box is the matrix, which is only learned from
+   *                 if it's read as a well-formed grid
+   */
+  private OCRArray2D recognize(BufferedImage img, Rectangle boundingBox, boolean isMatrix) {
+    OCRArray2D array = readCached(img, boundingBox);
+    if (array != null && (!isMatrix || array.isGrid()))
+      return array;
+
+    GlyphClassifier classifier = glyphClassifier;
+    if (classifier != null) {
+      array = classifier.read(img, boundingBox);
+      if (array != null && (!isMatrix || array.isGrid()))
+        return array;
+    }
+
+    OCRArray2D exact = new OCRArray2D();
+    array = doOCR(img, boundingBox, exact);
+    if (array != null && (!isMatrix || array.isGrid())) {
+      // Codes corrected to the nearest possible one may be misreads, and a
+      // misread would stick for as long as it's learned or cached
+      if (classifier != null)
+        classifier.learn(img, boundingBox, exact);
+      remember(img, boundingBox, exact);
+    }
+    return array;
+  }
+
+  /**
+   * Read a binarized box from the recognition cache alone
+   * @return the codes, or null if there's no cache or any code isn't in it
+   */
+  private OCRArray2D readCached(BufferedImage img, Rectangle boundingBox) {
+    RecognitionCache cache = recognitionCache;
+    if (cache == null)
+      return null;
+    OCRArray2D array = new OCRArray2D();
+    for (List<Rectangle> line : GridSegmenter.lines(img)) {
+      array.addRow();
+      for (Rectangle bounds : line) {
+        Integer value = cache.get(RecognitionCache.hash(img, bounds));
+        if (value == null)
+          return null;
+        bounds.translate(boundingBox.x, boundingBox.y);
+        array.add(value, bounds);
+      }
+    }
+    return array.getHeight() == 0 ? null : array;
+  }
+
+  /**
+   * Put the codes read from a binarized box in the recognition cache
+   * @param array the codes in the box which were read for sure, with bounds
+   *              in the capture
+   */
+  private void remember(BufferedImage img, Rectangle boundingBox, OCRArray2D array) {
+    RecognitionCache cache = recognitionCache;
+    if (cache == null)
+      return;
+    Rectangle imgBounds = new Rectangle(img.getWidth(), img.getHeight());
+    for (List<OCRArrayNode> row : array) {
+      for (OCRArrayNode node : row) {
+        Rectangle bounds = new Rectangle(node.boundingBox);
+        bounds.translate(-boundingBox.x, -boundingBox.y);
+        bounds = GridSegmenter.inkBounds(img, bounds.intersection(imgBounds));
+        if (bounds != null)
+          cache.put(RecognitionCache.hash(img, bounds), node.value);
+      }
+    }
+  }
+
+  /**
+   * Read the matrix by finding its cells with {@link GridSegmenter} and then
+   * recognizing each one: from the recognition cache if it's been seen
+   * before, with the glyph classifier if it's sure, then from a
+   * single Tesseract pass over the whole box, and finally with Tesseract on
+   * the cell alone (in parallel if the detector has worker threads). The grid
+   * comes from the segmentation, so a merged or missed word doesn't mean
+   * another threshold has to be tried.
+   * @return the matrix, or null if it couldn't be segmented or a cell
+   *         couldn't be read
+   */
+  private OCRArray2D detectMatrixCells(BufferedImage capture, Rectangle matrixBox) {
+    matrixImage = ImageProcessing.thresholdInverted(capture, matrixBox, MATRIX_THRESHOLD, matrixImage);
+    final BufferedImage img = matrixImage;
+    List<List<Rectangle>> cells = GridSegmenter.grid(img);
+    if (cells == null)
+      return null;
+    int height = cells.size();
+    int width = cells.get(0).size();
+    Integer[][] values = new Integer[height][width];
+    // Cells Tesseract read as a possible code without correcting it
+    boolean[][] exact = new boolean[height][width];
+    int unknown = height * width;
+
+    RecognitionCache cache = recognitionCache;
+    long[][] hashes = null;
+    if (cache != null) {
+      hashes = new long[height][width];
+      for (int y=0; y<height; y++) {
+        for (int x=0; x<width; x++) {
+          hashes[y][x] = RecognitionCache.hash(img, cells.get(y).get(x));
+          values[y][x] = cache.get(hashes[y][x]);
+          if (values[y][x] != null)
+            unknown--;
+        }
+      }
+    }
+
+    GlyphClassifier classifier = glyphClassifier;
+    if (classifier != null && classifier.isReady() && unknown > 0) {
+      for (int y=0; y<height; y++) {
+        for (int x=0; x<width; x++) {
+          if (values[y][x] != null)
+            continue;
+          GlyphClassifier.Match match = classifier.classify(GlyphClassifier.glyph(img, cells.get(y).get(x)));
+          if (match != null && match.confidence >= classifier.getMinConfidence()) {
+            values[y][x] = match.value;
+            unknown--;
+          }
+        }
+      }
+    }
+
+    if (unknown > 0) {
+      // A word is given to the cell holding most of it, and only if that's
+      // more than half of it, so a word merged across two cells goes to
+      // neither
+      List<Word> words = ocrWords(img);
+      if (words == null)
+        return null;
+      for (Word word : words) {
+        Rectangle bounds = word.getBoundingBox();
+        long area = (long) bounds.width * bounds.height;
+        long bestOverlap = 0;
+        int bestX = -1;
+        int bestY = -1;
+        for (int y=0; y<height; y++) {
+          for (int x=0; x<width; x++) {
+            Rectangle overlap = bounds.intersection(cells.get(y).get(x));
+            long overlapArea = overlap.isEmpty() ? 0 : (long) overlap.width * overlap.height;
+            if (overlapArea > bestOverlap) {
+              bestOverlap = overlapArea;
+              bestX = x;
+              bestY = y;
+            }
+          }
+        }
+        if (2 * bestOverlap > area && values[bestY][bestX] == null) {
+          values[bestY][bestX] = parseWord(word.getText());
+          exact[bestY][bestX] = possibleCells.contains(word.getText());
+          unknown--;
+        }
+      }
+    }
+
+    if (unknown > 0) {
+      ArrayList<Future<String>> reads = new ArrayList<>();
+      for (int y=0; y<height; y++) {
+        for (int x=0; x<width; x++) {
+          if (values[y][x] != null)
+            continue;
+          final Rectangle cell = cells.get(y).get(x);
+          if (parallelism > 1) {
+            reads.add(getWorkers().submit(() -> recognizeCell(img, cell)));
+          } else {
+            String text = recognizeCell(img, cell);
+            if (text == null)
+              return null;
+            values[y][x] = parseWord(text);
+            exact[y][x] = possibleCells.contains(text);
+          }
+        }
+      }
+      try {
+        int i = 0;
+        for (int y=0; y<height; y++) {
+          for (int x=0; x<width; x++) {
+            if (values[y][x] != null)
+              continue;
+            String text = reads.get(i++).get();
+            if (text == null)
+              return null;
+            values[y][x] = parseWord(text);
+            exact[y][x] = possibleCells.contains(text);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      } catch (ExecutionException e) {
+        logger.error("Matrix OCR failed", e.getCause());
+        return null;
+      } finally {
+        for (Future<String> read : reads)
+          read.cancel(false);
+      }
+    }
+
+    OCRArray2D matrix = new OCRArray2D();
+    OCRArray2D exactCells = new OCRArray2D();
+    boolean anyExact = false;
+    for (int y=0; y<height; y++) {
+      matrix.addRow();
+      exactCells.addRow();
+      for (int x=0; x<width; x++) {
+        Rectangle bounds = new Rectangle(cells.get(y).get(x));
+        bounds.translate(matrixBox.x, matrixBox.y);
+        matrix.add(values[y][x], bounds);
+        if (exact[y][x]) {
+          exactCells.add(values[y][x], bounds);
+          anyExact = true;
+        }
+      }
+    }
+    if (classifier != null && anyExact)
+      classifier.learn(img, matrixBox, exactCells);
+    if (cache != null && anyExact) {
+      for (int y=0; y<height; y++) {
+        for (int x=0; x<width; x++) {
+          if (exact[y][x])
+            cache.put(hashes[y][x], values[y][x]);
+        }
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * Read a single cell of a binarized image with Tesseract, on a copy with a
+   * blank margin around it since Tesseract doesn't like text at the edges
+   * @return the text read, or null if nothing was
+   */
+  private String recognizeCell(BufferedImage img, Rectangle cell) {
+    int margin = cell.height;
+    BufferedImage crop = new BufferedImage(
+        cell.width + 2 * margin, cell.height + 2 * margin, BufferedImage.TYPE_INT_RGB
+    );
+    int[] pixels = new int[crop.getWidth() * crop.getHeight()];
+    Arrays.fill(pixels, 0xFFFFFF);
+    crop.setRGB(0, 0, crop.getWidth(), crop.getHeight(), pixels, 0, crop.getWidth());
+    crop.setRGB(
+        margin, margin, cell.width, cell.height,
+        img.getRGB(cell.x, cell.y, cell.width, cell.height, null, 0, cell.width), 0, cell.width
+    );
+
+    List<Word> words = ocrWords(crop);
+    if (words == null || words.isEmpty())
+      return null;
+    StringBuilder text = new StringBuilder();
+    for (Word word : words)
+      text.append(word.getText().trim());
+    return text.toString();
+  }
+
+  /**
+   * Run Tesseract on an image with a handle from the pool
+   * @return the words found, or null if interrupted waiting for a handle
+   */
+  private List<Word> ocrWords(BufferedImage img) {
+    TesseractPool pool = getTessPool();
+    Tesseract tess;
     try {
-      img = img.getSubimage(
-          boundingBox.x, boundingBox.y, boundingBox.width, boundingBox.height
-      );
-    } catch (RasterFormatException e) {
+      tess = pool.borrow();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       return null;
     }
+    try {
+      return tess.getWords(img, ITessAPI.TessPageIteratorLevel.RIL_WORD);
+    } finally {
+      pool.release(tess);
+    }
+  }
+
+  /**
+   * @param img the binarized contents of the bounding box
+   * @param boundingBox where the image was cropped from in the capture
+   * @param exact if not null, filled with just the words read as a possible
+   *              code without correcting them, row for row
+   */
+  private OCRArray2D doOCR(BufferedImage img, Rectangle boundingBox, OCRArray2D exact) {
+    List<Word> words = ocrWords(img);
+    if (words == null)
+      return null;
 
     OCRArray2D array = new OCRArray2D();
     Rectangle lastBounds = null;
-    for (Word word : tess.getWords(img, ITessAPI.TessPageIteratorLevel.RIL_WORD)) {
+    for (Word word : words) {
       Rectangle bounds = word.getBoundingBox();
       bounds.translate(boundingBox.x, boundingBox.y);
-      if (lastBounds == null || bounds.y > lastBounds.y + lastBounds.height)
+      if (lastBounds == null || bounds.y > lastBounds.y + lastBounds.height) {
         // The bounding box is below the last one, so we're on a new row
         array.addRow();
-      array.add(parseWord(word.getText()), bounds);
+        if (exact != null)
+          exact.addRow();
+      }
+      Integer value = parseWord(word.getText());
+      array.add(value, bounds);
+      if (exact != null && possibleCells.contains(word.getText()))
+        exact.add(value, bounds);
       lastBounds = bounds;
     }
 
@@ -226,23 +611,71 @@ public class Detector {
     return bestMatch;
   }
 
+  /**
+   * Take a cheap signature of what's on screen, for noticing when a breach
+   * screen appears or changes without running a whole detection. Captures a
+   * single row of pixels from the left edge of the screen to each of the
+   * matrix and buffer anchors, binarized like the box search, so small
+   * flickers don't count as a change.
+   * @return the signature, or 0 if the matrix box isn't on screen
+   */
+  public long probe() {
+    ScreenScaler screenScaler = new ScreenScaler(basisDim, frameSource.getScreenSize());
+    long hash = 0xCBF29CE484222325L;
+    for (Point anchor : new Point[] {matrixFindBoxStart, bufferFindBoxStart}) {
+      Point start = screenScaler.scale(anchor);
+      BufferedImage strip = frameSource.capture(new Rectangle(0, start.y, start.x + 1, 1));
+      Point border = ImageProcessing.searchDirectionallyUntilBrighter(
+          strip, new Point(start.x, 0), -1, 0, BOX_THRESHOLD
+      );
+      if (border == null) {
+        if (anchor == matrixFindBoxStart)
+          return 0;
+        // There may not be a buffer box, which detect() allows for too
+        continue;
+      }
+      int[] pixels = ((DataBufferInt)strip.getRaster().getDataBuffer()).getData();
+      long bits = 0;
+      for (int i=0; i<pixels.length; i++) {
+        bits = bits << 1 | (ImageProcessing.brightness(pixels[i]) > BOX_THRESHOLD ? 1 : 0);
+        if ((i & 63) == 63 || i == pixels.length - 1) {
+          hash = (hash ^ bits) * 0x100000001B3L;
+          bits = 0;
+        }
+      }
+    }
+    return hash == 0 ? 1 : hash;
+  }
+
+  /**
+   * Get the stage timings of the last detection
+   * @return the timings, or null if {@link Metrics} are disabled
+   */
+  public DetectorMetrics getMetrics() {
+    return metrics;
+  }
+
   public DetectionResult detect() {
-    BufferedImage captureMaster = robot.createScreenCapture(screenScaler.scale(new Rectangle(basisDim)));
+    DetectorMetrics metrics = Metrics.ENABLED ? new DetectorMetrics() : null;
+    this.metrics = metrics;
+    long time = Metrics.ENABLED ? System.nanoTime() : 0;
 
-    // Find bounding boxes
+    // Frames from a recording may differ in size, so scale to each one
+    ScreenScaler screenScaler = new ScreenScaler(basisDim, frameSource.getScreenSize());
+    BufferedImage captureMaster = frameSource.capture(screenScaler.scale(new Rectangle(basisDim)));
+    if (metrics != null)
+      time = metrics.stage("capture", time);
 
-    BufferedImage captureBoundingBoxes = ImageProcessing.copy(captureMaster);
-    ImageProcessing.threshold(captureBoundingBoxes, BOX_THRESHOLD);
-    ImageProcessing.invert(captureBoundingBoxes);
+    // Find bounding boxes
 
     Rectangle matrixBox = findBox(
-        captureBoundingBoxes, screenScaler.scale(matrixFindBoxStart), 10
+        captureMaster, screenScaler.scale(matrixFindBoxStart), 10, BOX_THRESHOLD
     );
     if (matrixBox == null)
       return null;
 
     Rectangle sequencesBox = findBox(
-        captureBoundingBoxes, screenScaler.scale(sequencesFindBoxStart), 6
+        captureMaster, screenScaler.scale(sequencesFindBoxStart), 6, BOX_THRESHOLD
     );
     if (sequencesBox == null)
       return null;
@@ -250,45 +683,118 @@ public class Detector {
     sequencesBox.width = sequencesBox.width * 4 / 10;
 
     Rectangle bufferBox = findBox(
-        captureBoundingBoxes, screenScaler.scale(bufferFindBoxStart), 1
+        captureMaster, screenScaler.scale(bufferFindBoxStart), 1, BOX_THRESHOLD
     );
     int bufferSize;
     if (bufferBox == null)
       bufferSize = 8;
     else
       bufferSize = calcBufferSize(bufferBox);
+    if (metrics != null)
+      time = metrics.stage("find boxes", time);
 
-    // Perform OCR
+    // Perform OCR, binarizing only the boxes being read
+    Rectangle captureBounds = new Rectangle(captureMaster.getWidth(), captureMaster.getHeight());
+    if (matrixBox.isEmpty() || !captureBounds.contains(matrixBox)
+        || sequencesBox.isEmpty() || !captureBounds.contains(sequencesBox))
+      return null;
 
-    // Detect the matrix
-    BufferedImage captureMatrix;
-    OCRArray2D matrix = null;
-    for (int thresh=MATRIX_THRESHOLD; thresh<=MATRIX_THRESHOLD_MAX;
-         thresh+=MATRIX_THRESHOLD_DELTA) {
-      // TODO it'd probably be nice to optimize the image processing by
-      //   cropping rather than full copies ;)
-      captureMatrix = ImageProcessing.copy(captureMaster);
-      ImageProcessing.threshold(captureMatrix, thresh);
-      ImageProcessing.invert(captureMatrix);
-
-      matrix = doOCR(captureMatrix, matrixBox);
-      if (matrix != null && matrix.isGrid())
-        // the OCR successfully found a well-formed grid
-        break;
+    // Detect the matrix, sweeping thresholds only if it can't be segmented
+    OCRArray2D matrix = detectMatrixCells(captureMaster, matrixBox);
+    if (metrics != null)
+      time = metrics.stage("matrix cells", time);
+    if (matrix == null) {
+      if (parallelism > 1) {
+        matrix = detectMatrixConcurrently(captureMaster, matrixBox);
+        if (metrics != null)
+          time = metrics.stage("matrix threshold sweep", time);
+      } else {
+        for (int thresh=MATRIX_THRESHOLD; thresh<=MATRIX_THRESHOLD_MAX;
+             thresh+=MATRIX_THRESHOLD_DELTA) {
+          matrixImage = ImageProcessing.thresholdInverted(captureMaster, matrixBox, thresh, matrixImage);
+          if (metrics != null)
+            time = metrics.stage("matrix threshold " + thresh, time);
+
+          matrix = recognize(matrixImage, matrixBox, true);
+          if (metrics != null)
+            time = metrics.stage("matrix OCR " + thresh, time);
+          if (matrix != null && matrix.isGrid())
+            // the OCR successfully found a well-formed grid
+            break;
+        }
+      }
     }
     if (matrix == null)
       return null;
 
     // Detect the sequences
-    BufferedImage captureSequences = ImageProcessing.copy(captureMaster);
-    ImageProcessing.threshold(captureSequences, SEQUENCES_THRESHOLD);
-    ImageProcessing.invert(captureSequences);
+    sequencesImage = ImageProcessing.thresholdInverted(
+        captureMaster, sequencesBox, SEQUENCES_THRESHOLD, sequencesImage
+    );
+    if (metrics != null)
+      time = metrics.stage("sequences threshold", time);
 
-    OCRArray2D sequences = doOCR(captureSequences, sequencesBox);
+    OCRArray2D sequences = recognize(sequencesImage, sequencesBox, false);
+    if (metrics != null)
+      metrics.stage("sequences OCR", time);
     if (sequences == null)
       return null;
 
     return new DetectionResult(matrix, sequences, bufferSize);
   }
 
+  private ExecutorService getWorkers() {
+    if (workers == null) {
+      workers = Executors.newFixedThreadPool(parallelism, r -> {
+        Thread thread = new Thread(r, "detector-ocr");
+        thread.setDaemon(true);
+        return thread;
+      });
+      workerImage = ThreadLocal.withInitial(() -> new BufferedImage[1]);
+    }
+    return workers;
+  }
+
+  /**
+   * Binarize and OCR the matrix at every threshold on the worker pool. Gives
+   * the same result as trying them one after another: the first well-formed
+   * grid in threshold order, or the last threshold's attempt if there is none.
+   */
+  private OCRArray2D detectMatrixConcurrently(BufferedImage capture, Rectangle matrixBox) {
+    ExecutorService workers = getWorkers();
+    final ThreadLocal<BufferedImage[]> images = workerImage;
+
+    ArrayList<Future<OCRArray2D>> attempts = new ArrayList<>();
+    for (int thresh=MATRIX_THRESHOLD; thresh<=MATRIX_THRESHOLD_MAX;
+         thresh+=MATRIX_THRESHOLD_DELTA) {
+      final int threshold = thresh;
+      attempts.add(workers.submit(() -> {
+        BufferedImage[] image = images.get();
+        image[0] = ImageProcessing.thresholdInverted(capture, matrixBox, threshold, image[0]);
+        return recognize(image[0], matrixBox, true);
+      }));
+    }
+
+    OCRArray2D matrix = null;
+    try {
+      for (Future<OCRArray2D> attempt : attempts) {
+        matrix = attempt.get();
+        if (matrix != null && matrix.isGrid())
+          // the OCR successfully found a well-formed grid
+          break;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      matrix = null;
+    } catch (ExecutionException e) {
+      logger.error("Matrix OCR failed", e.getCause());
+      matrix = null;
+    } finally {
+      // Tesseract can't be interrupted, but the rest needn't start
+      for (Future<OCRArray2D> attempt : attempts)
+        attempt.cancel(false);
+    }
+    return matrix;
+  }
+
 }
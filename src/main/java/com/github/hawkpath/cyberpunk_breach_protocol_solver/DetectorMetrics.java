@@ -0,0 +1,49 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How long each stage of a single {@link Detector#detect()} took. Only
+ * collected when {@link Metrics} are enabled.
+ */
+public class DetectorMetrics {
+
+  private final LinkedHashMap<String, Long> stages = new LinkedHashMap<>();
+  private long totalNanos = 0;
+
+  /**
+   * Record a stage which started at `startNanos` and ended now
+   * @return the time now, to start the next stage from
+   */
+  long stage(String name, long startNanos) {
+    long now = System.nanoTime();
+    long nanos = now - startNanos;
+    stages.merge(name, nanos, Long::sum);
+    totalNanos += nanos;
+    Metrics.commitStage(name, nanos);
+    return now;
+  }
+
+  /**
+   * Get the duration of each stage in nanoseconds, in the order they ran
+   */
+  public Map<String, Long> getStages() {
+    return Collections.unmodifiableMap(stages);
+  }
+
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(String.format("Detection in %.3f ms:", totalNanos / 1e6));
+    for (Map.Entry<String, Long> stage : stages.entrySet()) {
+      sb.append(String.format("\n  %s: %.3f ms", stage.getKey(), stage.getValue() / 1e6));
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,101 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.AWTException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs detection on recorded frames and prints what was found, or records
+ * frames to a raw frame file for replaying later
+ */
+class FrameReplay {
+
+  final static Logger logger = LoggerFactory.getLogger(FrameReplay.class.getName());
+
+  public static void main(String[] args) {
+    String sourcePath = null;
+    String recordPath = null;
+    long limit = -1;
+
+    try {
+      for (int i=0; i<args.length; i++) {
+        switch (args[i]) {
+          case "--record":
+            recordPath = optionValue(args, i++);
+            break;
+          case "--limit":
+            limit = Long.parseLong(optionValue(args, i++));
+            break;
+          default:
+            if (sourcePath != null || args[i].startsWith("--"))
+              throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            sourcePath = args[i];
+        }
+      }
+      if (limit == 0 || limit < -1)
+        throw new IllegalArgumentException("--limit must be positive");
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      printUsage();
+      System.exit(2);
+      return;
+    }
+    if (limit == -1)
+      // The screen never runs out of frames
+      limit = sourcePath == null ? 1 : Long.MAX_VALUE;
+
+    try (FrameSource source = sourcePath == null
+        ? new RobotFrameSource() : FrameSource.open(new File(sourcePath))) {
+      if (recordPath != null) {
+        long count = RawFrameSource.record(source, new File(recordPath), limit);
+        logger.info("Recorded {} frames", count);
+      } else {
+        replay(source, limit);
+      }
+    } catch (IOException | AWTException e) {
+      logger.error("Replay failed", e);
+      System.exit(1);
+    }
+  }
+
+  private static void replay(FrameSource source, long limit) throws IOException {
+    Detector detector = new Detector(source);
+    for (long frame=0; frame<limit && source.advance(); frame++) {
+      String name = source instanceof ImageFrameSource
+          ? ((ImageFrameSource) source).getCurrentFile().getName() : "frame " + frame;
+      long time = System.nanoTime();
+      DetectionResult detection = detector.detect();
+      time = System.nanoTime() - time;
+
+      if (detection == null) {
+        System.out.printf("%s: nothing detected in %.3f ms%n", name, time / 1e6);
+        continue;
+      }
+      System.out.printf(
+          "%s: detected in %.3f ms, buffer size %d%nMatrix:%n%s%nSequences:%n%s%n",
+          name, time / 1e6, detection.bufferSize, detection.matrix, detection.sequences
+      );
+      if (detector.getMetrics() != null)
+        System.out.println(detector.getMetrics());
+    }
+  }
+
+  private static String optionValue(String[] args, int i) throws IllegalArgumentException {
+    if (i + 1 >= args.length)
+      throw new IllegalArgumentException("Missing value for " + args[i]);
+    return args[i + 1];
+  }
+
+  private static void printUsage() {
+    System.err.println(
+        "Usage: detect [--record FILE] [--limit N] [SOURCE]\n"
+            + "Runs detection on each frame of SOURCE (a screenshot, a directory of\n"
+            + "screenshots or a raw frame file), or on the screen if it's missing.\n"
+            + "With --record, saves the frames to a raw frame file instead."
+    );
+  }
+
+}
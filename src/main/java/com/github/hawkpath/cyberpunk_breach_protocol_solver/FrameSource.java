@@ -0,0 +1,72 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Where the {@link Detector} gets its frames from: the live screen, or frames
+ * recorded earlier, so detection can run headless and be benchmarked.
+ *
+ * A source has a current frame, which {@link #advance()} moves on from.
+ * Captured images are TYPE_INT_RGB, and may be shared with the source, so
+ * they must not be modified.
+ */
+public interface FrameSource extends Closeable {
+
+  /**
+   * Move on to the next frame. The live screen always has one.
+   * @return false if there are no more frames
+   */
+  boolean advance() throws IOException;
+
+  /**
+   * Get the size of the current frame
+   */
+  Dimension getScreenSize();
+
+  /**
+   * Get a region of the current frame
+   */
+  BufferedImage capture(Rectangle region);
+
+  @Override
+  default void close() throws IOException {}
+
+  /**
+   * Open recorded frames: a raw frame file (see {@link RawFrameSource}), a
+   * screenshot, or a directory of screenshots
+   */
+  static FrameSource open(File path) throws IOException {
+    if (path.isFile() && path.length() >= 4) {
+      try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+        if (in.readInt() == RawFrameSource.FILE_MAGIC)
+          return new RawFrameSource(path);
+      }
+    }
+    return new ImageFrameSource(path);
+  }
+
+  /**
+   * Copy a region of a TYPE_INT_RGB image into an image of its own, as
+   * detection expects images to start at the beginning of their pixel array
+   */
+  static BufferedImage crop(BufferedImage img, Rectangle region) {
+    if (region.x == 0 && region.y == 0
+        && region.width == img.getWidth() && region.height == img.getHeight())
+      return img;
+    BufferedImage crop = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+    crop.setRGB(
+        0, 0, region.width, region.height,
+        img.getRGB(region.x, region.y, region.width, region.height, null, 0, region.width),
+        0, region.width
+    );
+    return crop;
+  }
+
+}
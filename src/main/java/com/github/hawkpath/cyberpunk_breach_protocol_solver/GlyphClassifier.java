@@ -0,0 +1,264 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads binarized matrix and sequence boxes by matching each code against
+ * templates, rather than running Tesseract on them. Codes are found by
+ * {@link GridSegmenter}, then scaled to a fixed size bitmap and compared by
+ * Hamming distance.
+ *
+ * There's no way of knowing what the game's font looks like up front, so
+ * templates are learned from boxes Tesseract has read (see {@link #learn})
+ * and can be kept in a file between runs. Until there is a template for
+ * every possible code, or if any code doesn't match well enough, reading
+ * fails and the caller should fall back to Tesseract.
+ */
+public class GlyphClassifier {
+
+  final static Logger logger = LoggerFactory.getLogger(GlyphClassifier.class.getName());
+
+  private static final int FILE_MAGIC = 0x42504754;  // "BPGT"
+  private static final int FILE_VERSION = 1;
+
+  // Glyphs are scaled to GLYPH_WIDTH x GLYPH_HEIGHT bits, one row per long
+  static final int GLYPH_WIDTH = 64;
+  static final int GLYPH_HEIGHT = 24;
+  private static final int GLYPH_BITS = GLYPH_WIDTH * GLYPH_HEIGHT;
+  // Templates kept per code, e.g. for the matrix and sequences sizes
+  private static final int MAX_VARIANTS = 4;
+  // A learned glyph this similar to an existing template isn't worth keeping
+  private static final float DUPLICATE_CONFIDENCE = 0.97f;
+
+  /**
+   * The code a glyph matched, and how well: the fraction of bits it shares
+   * with the closest template
+   */
+  public static class Match {
+    public final int value;
+    public final float confidence;
+
+    Match(int value, float confidence) {
+      this.value = value;
+      this.confidence = confidence;
+    }
+  }
+
+  private final float minConfidence;
+  private final LinkedHashMap<Integer, ArrayList<long[]>> templates = new LinkedHashMap<>();
+  private File file = null;
+
+  /**
+   * @param values every code which can appear
+   * @param minConfidence how well every code in a box must match for it to be
+   *                      read (see {@link Match#confidence})
+   */
+  public GlyphClassifier(int[] values, float minConfidence) {
+    this.minConfidence = minConfidence;
+    for (int value : values)
+      templates.put(value, new ArrayList<>());
+  }
+
+  /**
+   * Create a classifier which keeps its templates in a file, loading any
+   * already in it
+   */
+  public GlyphClassifier(int[] values, float minConfidence, File path) {
+    this(values, minConfidence);
+    file = path;
+    if (path.exists()) {
+      try {
+        load(path);
+      } catch (IOException e) {
+        logger.warn("Failed to load glyph templates, they'll be learned again", e);
+      }
+    }
+  }
+
+  private void load(File path) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+      if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION
+          || in.readInt() != GLYPH_WIDTH || in.readInt() != GLYPH_HEIGHT)
+        throw new IOException("not a glyph template file, or an old one");
+      int count = in.readInt();
+      for (int i=0; i<count; i++) {
+        int value = in.readInt();
+        long[] glyph = new long[GLYPH_HEIGHT];
+        for (int y=0; y<GLYPH_HEIGHT; y++)
+          glyph[y] = in.readLong();
+        List<long[]> variants = templates.get(value);
+        if (variants != null && variants.size() < MAX_VARIANTS)
+          variants.add(glyph);
+      }
+    }
+    logger.debug("Loaded glyph templates, ready: {}", isReady());
+  }
+
+  private synchronized void save() {
+    if (file == null)
+      return;
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      int count = 0;
+      for (List<long[]> variants : templates.values())
+        count += variants.size();
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(FILE_VERSION);
+      out.writeInt(GLYPH_WIDTH);
+      out.writeInt(GLYPH_HEIGHT);
+      out.writeInt(count);
+      for (Map.Entry<Integer, ArrayList<long[]>> entry : templates.entrySet()) {
+        for (long[] glyph : entry.getValue()) {
+          out.writeInt(entry.getKey());
+          for (long row : glyph)
+            out.writeLong(row);
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to save glyph templates", e);
+    }
+  }
+
+  public float getMinConfidence() {
+    return minConfidence;
+  }
+
+  /**
+   * Whether there is a template for every possible code
+   */
+  public synchronized boolean isReady() {
+    for (List<long[]> variants : templates.values()) {
+      if (variants.isEmpty())
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Scale the ink within `bounds` of a binarized image to a glyph bitmap
+   */
+  static long[] glyph(BufferedImage img, Rectangle bounds) {
+    int width = img.getWidth();
+    int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    long[] glyph = new long[GLYPH_HEIGHT];
+    for (int gy=0; gy<GLYPH_HEIGHT; gy++) {
+      int y = bounds.y + (2 * gy + 1) * bounds.height / (2 * GLYPH_HEIGHT);
+      long row = 0;
+      for (int gx=0; gx<GLYPH_WIDTH; gx++) {
+        int x = bounds.x + (2 * gx + 1) * bounds.width / (2 * GLYPH_WIDTH);
+        if ((pixels[y * width + x] & 0xFFFFFF) == 0)
+          row |= 1L << gx;
+      }
+      glyph[gy] = row;
+    }
+    return glyph;
+  }
+
+  private static int distance(long[] a, long[] b) {
+    int distance = 0;
+    for (int i=0; i<GLYPH_HEIGHT; i++)
+      distance += Long.bitCount(a[i] ^ b[i]);
+    return distance;
+  }
+
+  /**
+   * Find the code a glyph looks most like
+   * @return the match, or null if there are no templates yet
+   */
+  public synchronized Match classify(long[] glyph) {
+    int bestValue = 0;
+    int bestDistance = Integer.MAX_VALUE;
+    for (Map.Entry<Integer, ArrayList<long[]>> entry : templates.entrySet()) {
+      for (long[] template : entry.getValue()) {
+        int distance = distance(glyph, template);
+        if (distance < bestDistance) {
+          bestDistance = distance;
+          bestValue = entry.getKey();
+        }
+      }
+    }
+    if (bestDistance == Integer.MAX_VALUE)
+      return null;
+    return new Match(bestValue, 1 - (float) bestDistance / GLYPH_BITS);
+  }
+
+  /**
+   * Read the codes in a binarized box, filling an array the same way as the
+   * Tesseract reader
+   * @param img the binarized contents of the bounding box
+   * @param boundingBox where the image was cropped from in the capture
+   * @return the codes, or null if there aren't templates for every code yet
+   *         or something didn't match well enough
+   */
+  public OCRArray2D read(BufferedImage img, Rectangle boundingBox) {
+    if (!isReady())
+      return null;
+    OCRArray2D array = new OCRArray2D();
+    for (List<Rectangle> line : GridSegmenter.lines(img)) {
+      array.addRow();
+      for (Rectangle bounds : line) {
+        Match match = classify(glyph(img, bounds));
+        if (match == null || match.confidence < minConfidence)
+          return null;
+        bounds.translate(boundingBox.x, boundingBox.y);
+        array.add(match.value, bounds);
+      }
+    }
+    return array.getHeight() == 0 ? null : array;
+  }
+
+  /**
+   * Learn templates from a box read some other way
+   * @param img the binarized contents of the bounding box
+   * @param boundingBox where the image was cropped from in the capture
+   * @param array the codes in the box which were read for sure, with bounds
+   *              in the capture
+   */
+  public synchronized void learn(BufferedImage img, Rectangle boundingBox, OCRArray2D array) {
+    boolean learned = false;
+    Rectangle imgBounds = new Rectangle(img.getWidth(), img.getHeight());
+    for (List<OCRArrayNode> row : array) {
+      for (OCRArrayNode node : row) {
+        Rectangle bounds = new Rectangle(node.boundingBox);
+        bounds.translate(-boundingBox.x, -boundingBox.y);
+        bounds = GridSegmenter.inkBounds(img, bounds.intersection(imgBounds));
+        if (bounds == null)
+          continue;
+        learned |= learn(node.value, glyph(img, bounds));
+      }
+    }
+    if (learned)
+      save();
+  }
+
+  private synchronized boolean learn(int value, long[] glyph) {
+    List<long[]> variants = templates.get(value);
+    if (variants == null || variants.size() >= MAX_VARIANTS)
+      return false;
+    Match match = classify(glyph);
+    if (match != null && match.confidence >= DUPLICATE_CONFIDENCE)
+      // Either already known, or close enough to another code that it's
+      // more likely a misread than a new variant
+      return false;
+    variants.add(glyph);
+    logger.debug("Learned glyph template {} for {}", variants.size(), String.format("%02X", value));
+    return true;
+  }
+
+}
@@ -0,0 +1,188 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds codes in binarized boxes (black ink on white) from ink projections,
+ * without OCR: a line of text is a run of rows with ink, and a code a run of
+ * columns with ink, allowing for the small gap between its two characters.
+ */
+class GridSegmenter {
+
+  // Runs of ink shorter than this many pixels are taken as noise
+  static final int MIN_LINE_HEIGHT = 4;
+
+  /**
+   * Find the lines of text in an image and the codes in each, top to bottom
+   * and left to right. Lines may have different numbers of codes, like the
+   * sequences.
+   */
+  static List<List<Rectangle>> lines(BufferedImage img) {
+    int width = img.getWidth();
+    int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    List<List<Rectangle>> lines = new ArrayList<>();
+
+    for (int[] band : rowBands(img)) {
+      int top = band[0];
+      int bottom = band[1];
+      List<Rectangle> words = new ArrayList<>();
+      for (int[] column : columnBands(pixels, width, new int[][] {band}, (bottom - top) / 2)) {
+        Rectangle bounds = inkBounds(img, new Rectangle(column[0], top, column[1] - column[0], bottom - top));
+        if (bounds != null && bounds.height >= MIN_LINE_HEIGHT)
+          words.add(bounds);
+      }
+      if (!words.isEmpty())
+        lines.add(words);
+    }
+    return lines;
+  }
+
+  /**
+   * Find the cells of a grid of codes, like the matrix. Rows and columns are
+   * found from the projections of the whole image, so a code which is hard to
+   * read still gets a cell.
+   * @return the bounds of the ink in each cell, row by row, or null if the
+   *         image doesn't look like a grid (a cell is blank, or the rows
+   *         aren't all about the same height)
+   */
+  static List<List<Rectangle>> grid(BufferedImage img) {
+    int width = img.getWidth();
+    int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+
+    List<int[]> rows = rowBands(img);
+    if (rows.isEmpty())
+      return null;
+    int[] heights = new int[rows.size()];
+    for (int i=0; i<heights.length; i++)
+      heights[i] = rows.get(i)[1] - rows.get(i)[0];
+    Arrays.sort(heights);
+    int lineHeight = heights[heights.length / 2];
+    // Specks are dropped, but a band much taller than the text is probably a
+    // highlighted row, which projections can't see through
+    rows.removeIf(band -> band[1] - band[0] < lineHeight / 2);
+    for (int[] band : rows) {
+      if (band[1] - band[0] > lineHeight * 2)
+        return null;
+    }
+
+    List<int[]> columns = columnBands(pixels, width, rows.toArray(new int[0][]), lineHeight / 2);
+    columns.removeIf(band -> band[1] - band[0] < lineHeight / 3);
+    if (columns.isEmpty())
+      return null;
+
+    List<List<Rectangle>> cells = new ArrayList<>(rows.size());
+    for (int[] row : rows) {
+      List<Rectangle> cellRow = new ArrayList<>(columns.size());
+      for (int[] column : columns) {
+        Rectangle bounds = inkBounds(img, new Rectangle(
+            column[0], row[0], column[1] - column[0], row[1] - row[0]
+        ));
+        if (bounds == null)
+          return null;
+        cellRow.add(bounds);
+      }
+      cells.add(cellRow);
+    }
+    return cells;
+  }
+
+  /**
+   * Find runs of rows with ink
+   * @return the top and bottom (exclusive) of each run at least
+   *         {@link #MIN_LINE_HEIGHT} tall
+   */
+  private static List<int[]> rowBands(BufferedImage img) {
+    int width = img.getWidth();
+    int height = img.getHeight();
+    int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    List<int[]> bands = new ArrayList<>();
+
+    int y = 0;
+    while (y < height) {
+      while (y < height && !spanHasInk(pixels, width, y, 0, width - 1))
+        y++;
+      int top = y;
+      while (y < height && spanHasInk(pixels, width, y, 0, width - 1))
+        y++;
+      if (y - top >= MIN_LINE_HEIGHT)
+        bands.add(new int[] {top, y});
+    }
+    return bands;
+  }
+
+  /**
+   * Find runs of columns with ink within the given row bands, joining runs
+   * separated by no more than `maxGap` blank columns
+   * @return the left and right (exclusive) of each run
+   */
+  private static List<int[]> columnBands(int[] pixels, int width, int[][] rows, int maxGap) {
+    List<int[]> bands = new ArrayList<>();
+    int left = -1;
+    int right = -1;
+    for (int x=0; x<width; x++) {
+      boolean ink = false;
+      for (int i=0; i<rows.length && !ink; i++)
+        ink = columnHasInk(pixels, width, x, rows[i][0], rows[i][1]);
+      if (!ink)
+        continue;
+      if (left >= 0 && x - right - 1 > maxGap) {
+        bands.add(new int[] {left, right + 1});
+        left = -1;
+      }
+      if (left < 0)
+        left = x;
+      right = x;
+    }
+    if (left >= 0)
+      bands.add(new int[] {left, right + 1});
+    return bands;
+  }
+
+  private static boolean spanHasInk(int[] pixels, int width, int y, int left, int right) {
+    for (int i = y * width + left, end = y * width + right; i <= end; i++) {
+      if ((pixels[i] & 0xFFFFFF) == 0)
+        return true;
+    }
+    return false;
+  }
+
+  private static boolean columnHasInk(int[] pixels, int width, int x, int top, int bottom) {
+    for (int i = top * width + x, end = bottom * width; i < end; i += width) {
+      if ((pixels[i] & 0xFFFFFF) == 0)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Shrink a rectangle of an image to the ink inside it
+   * @return the ink's bounds, or null if there is none
+   */
+  static Rectangle inkBounds(BufferedImage img, Rectangle bounds) {
+    if (bounds.isEmpty())
+      return null;
+    int width = img.getWidth();
+    int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    int left = bounds.x;
+    int right = bounds.x + bounds.width - 1;
+    int top = bounds.y;
+    int bottom = bounds.y + bounds.height;
+    while (left <= right && !columnHasInk(pixels, width, left, top, bottom))
+      left++;
+    while (right > left && !columnHasInk(pixels, width, right, top, bottom))
+      right--;
+    if (left > right)
+      return null;
+    while (!spanHasInk(pixels, width, top, left, right))
+      top++;
+    while (!spanHasInk(pixels, width, bottom - 1, left, right))
+      bottom--;
+    return new Rectangle(left, top, right - left + 1, bottom - top);
+  }
+
+}
@@ -0,0 +1,84 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Frames read from a screenshot, or from every screenshot in a directory in
+ * name order. Any format ImageIO reads works, e.g. PNG.
+ */
+class ImageFrameSource implements FrameSource {
+
+  private final List<File> files;
+  private int index = -1;
+  private BufferedImage frame = null;
+
+  public ImageFrameSource(File path) throws IOException {
+    if (path.isDirectory()) {
+      File[] children = path.listFiles(File::isFile);
+      if (children == null)
+        throw new IOException("Can't list " + path);
+      Arrays.sort(children);
+      files = new ArrayList<>(Arrays.asList(children));
+    } else if (path.isFile()) {
+      files = new ArrayList<>();
+      files.add(path);
+    } else {
+      throw new IOException("No such file or directory " + path);
+    }
+  }
+
+  @Override
+  public boolean advance() throws IOException {
+    while (++index < files.size()) {
+      BufferedImage img = ImageIO.read(files.get(index));
+      if (img == null)
+        // Not an image, e.g. a labels file next to the screenshots
+        continue;
+      frame = toIntRGB(img);
+      return true;
+    }
+    frame = null;
+    return false;
+  }
+
+  private static BufferedImage toIntRGB(BufferedImage img) {
+    if (img.getType() == BufferedImage.TYPE_INT_RGB)
+      return img;
+    BufferedImage converted = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = converted.createGraphics();
+    g.drawImage(img, 0, 0, null);
+    g.dispose();
+    return converted;
+  }
+
+  /**
+   * Get the file the current frame was read from
+   */
+  public File getCurrentFile() {
+    return frame == null ? null : files.get(index);
+  }
+
+  @Override
+  public Dimension getScreenSize() {
+    if (frame == null)
+      throw new IllegalStateException("no current frame");
+    return new Dimension(frame.getWidth(), frame.getHeight());
+  }
+
+  @Override
+  public BufferedImage capture(Rectangle region) {
+    if (frame == null)
+      throw new IllegalStateException("no current frame");
+    return FrameSource.crop(frame, region);
+  }
+
+}
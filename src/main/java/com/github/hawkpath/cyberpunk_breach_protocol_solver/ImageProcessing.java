@@ -1,6 +1,7 @@
 package com.github.hawkpath.cyberpunk_breach_protocol_solver;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBufferInt;
@@ -38,6 +39,72 @@ public class ImageProcessing {
     }
   }
 
+  /**
+   * Threshold and invert a region of an image in one pass, like a copy
+   * followed by {@link #threshold} and {@link #invert} but without touching
+   * anything outside the region: pixels brighter than `threshold` turn black
+   * and the rest white.
+   * @param img an image with int pixels, e.g. a screen capture
+   * @param region part of the image to process, which must lie within it
+   * @param dest image to write the result into, reused if it's an RGB image
+   *             the size of the region, or null
+   * @return `dest`, or a new image if it couldn't be reused
+   */
+  public static BufferedImage thresholdInverted(
+      BufferedImage img, Rectangle region, int threshold, BufferedImage dest
+  ) {
+    if (region.isEmpty() || !new Rectangle(img.getWidth(), img.getHeight()).contains(region))
+      throw new IllegalArgumentException("region must be within the image");
+    if (dest == null || dest.getType() != BufferedImage.TYPE_INT_RGB
+        || dest.getWidth() != region.width || dest.getHeight() != region.height)
+      dest = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+
+    int width = img.getWidth();
+    int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    int[] out = ((DataBufferInt)dest.getRaster().getDataBuffer()).getData();
+
+    int o = 0;
+    for (int y = region.y; y < region.y + region.height; y++) {
+      int i = y * width + region.x;
+      for (int end = i + region.width; i < end; i++, o++) {
+        out[o] = brightness(pixels[i]) > threshold ? 0 : 0xFFFFFF;
+      }
+    }
+    return dest;
+  }
+
+  /**
+   * Get the largest of a pixel's red, green and blue values
+   */
+  static int brightness(int pixel) {
+    int r = (0xFF_00_00 & pixel) >> 16;
+    int g = (0x00_FF_00 & pixel) >> 8;
+    int b = (0x00_00_FF & pixel);
+    return Math.max(Math.max(r, g), b);
+  }
+
+  /**
+   * Search in a direction for the first pixel brighter than `threshold`,
+   * which is where a search for black would stop in the image thresholded
+   * and inverted by {@link #thresholdInverted}. Only the pixels along the way
+   * are looked at.
+   */
+  public static Point searchDirectionallyUntilBrighter(
+      BufferedImage img, Point startPos, int deltaX, int deltaY, int threshold
+  ) {
+    int x = startPos.x;
+    int y = startPos.y;
+    int width = img.getWidth();
+    int height = img.getHeight();
+    int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+
+    for ( ; x >= 0 && x < width && y >= 0 && y < height; x+=deltaX, y+=deltaY) {
+      if (brightness(pixels[y*width + x]) > threshold)
+        return new Point(x, y);
+    }
+    return null;
+  }
+
   public static Point searchDirectionallyUntil(
       BufferedImage img,
       Point startPos, int deltaX, int deltaY,
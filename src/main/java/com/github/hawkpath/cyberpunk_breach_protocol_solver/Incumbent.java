@@ -0,0 +1,90 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deadline of a search, and the best path it has found so far. Searches
+ * offer every path that completes some sequences, so when time runs out
+ * there's still something to show for it. Paths are ranked by
+ * {@link SequenceAutomaton#priorityScore(int, int)} of the sequences they
+ * complete.
+ *
+ * May be shared by the threads of a parallel search.
+ */
+class Incumbent {
+
+  // Number of deadline checks between reads of the clock, minus one
+  private static final int CLOCK_CHECK_MASK = 0xFF;
+
+  private final long deadline;
+  private final int sequenceCount;
+  private volatile boolean expired = false;
+  // Only approximate when shared between threads, which is fine for this
+  private int checks = 0;
+
+  private long bestScore = 0;
+  private int bestCompleted = 0;
+  private ArrayList<OCRArrayNode> bestPath = null;
+
+  /**
+   * @param timeLimit milliseconds from now until the deadline
+   * @param sequenceCount number of sequences in the puzzle
+   */
+  public Incumbent(long timeLimit, int sequenceCount) {
+    this.deadline = System.nanoTime() + timeLimit * 1_000_000;
+    this.sequenceCount = sequenceCount;
+  }
+
+  /**
+   * Check whether the deadline has passed. Cheap enough to call for every
+   * search node, since the clock is only read every so often.
+   */
+  public boolean checkExpired() {
+    if (expired)
+      return true;
+    if ((++checks & CLOCK_CHECK_MASK) == 0 && System.nanoTime() - deadline >= 0)
+      expired = true;
+    return expired;
+  }
+
+  /**
+   * @return true if {@link #checkExpired()} has seen the deadline pass
+   */
+  public boolean isExpired() {
+    return expired;
+  }
+
+  /**
+   * @param completed sequences completed by a path, as a bitmask where bit 0
+   *                  is the sequence with the highest priority
+   * @return true if a path completing these sequences would be the new best
+   */
+  public synchronized boolean improves(int completed) {
+    return SequenceAutomaton.priorityScore(completed, sequenceCount) > bestScore;
+  }
+
+  /**
+   * Keep the path if it's better than the best one so far
+   */
+  public synchronized void offer(int completed, List<OCRArrayNode> path) {
+    long score = SequenceAutomaton.priorityScore(completed, sequenceCount);
+    if (score <= bestScore)
+      return;
+    bestScore = score;
+    bestCompleted = completed;
+    bestPath = new ArrayList<>(path);
+  }
+
+  /**
+   * @return the best path found so far, or null if there is none
+   */
+  public synchronized ArrayList<OCRArrayNode> getPath() {
+    return bestPath;
+  }
+
+  public synchronized int getCompleted() {
+    return bestCompleted;
+  }
+
+}
@@ -0,0 +1,414 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Search engine equivalent to the recursive search {@link Solver} started
+ * out with, finding the same path, but with the recursion replaced by an
+ * explicit stack. There is one frame per buffer index, packed into a
+ * preallocated {@code int[]}, so a step of the search allocates nothing and
+ * long buffers don't need a deep call stack.
+ *
+ * Since the whole state of the search lives in that array, a search can stop
+ * after some number of steps and carry on later ({@link #run(long)}), be
+ * copied into a {@link Snapshot} and restored into another search, or hand
+ * the part it hasn't gotten to yet over to another thread ({@link #split()},
+ * used by {@link WorkStealingSearch}).
+ *
+ * Cells are encoded as {@code y * width + x} like in {@link BitmaskSearch},
+ * but used cells are tracked in as many longs as the matrix needs, so any
+ * grid can be searched.
+ */
+class IterativeSearch {
+
+  public enum Status {
+    /** A path was found, see {@link #getPath()} */
+    FOUND,
+    /** Every path was tried without success */
+    EXHAUSTED,
+    /** Ran out of steps; {@link #run(long)} continues the search */
+    SUSPENDED,
+    /** The deadline of the {@link Incumbent} passed */
+    EXPIRED
+  }
+
+  // Fields of a frame. Frame d picks cell d of the path, trying candidates
+  // from CURSOR up to LIMIT: first the cells of its row/column holding the
+  // TARGET value, then every cell as a bridge.
+  private static final int SEQ_INDEX = 0;
+  private static final int SEQ_VALUE_INDEX = 1;
+  private static final int CURSOR = 2;
+  private static final int LIMIT = 3;
+  // First cell of the row (even frames) or column (odd frames)
+  private static final int FIRST = 4;
+  private static final int TARGET = 5;
+  private static final int CELL = 6;
+  // 1 if picking the cell marked it as used. Bridges may pass over a used
+  // cell, which then has to stay marked when they're undone.
+  private static final int MARKED = 7;
+  private static final int FRAME_SHIFT = 3;
+  private static final int FRAME_SIZE = 1 << FRAME_SHIFT;
+
+  // Results of entering a frame
+  private static final int ENTERED = 0;
+  private static final int COMPLETED = 1;
+  private static final int PRUNED = 2;
+
+  /**
+   * State of a search, which can be restored into any search of the same
+   * matrix and buffer size. Never modified once taken, so it may be passed
+   * between threads.
+   */
+  static final class Snapshot {
+
+    private final int[][] sequences;
+    private final int[] overlaps;
+    private final int[] prefixMasks;
+    private final int floor;
+    private final int depth;
+    private final int[] frames;
+
+    private Snapshot(IterativeSearch search, int floor, int depth) {
+      this.sequences = search.sequences;
+      this.overlaps = search.overlaps;
+      this.prefixMasks = search.prefixMasks;
+      this.floor = floor;
+      this.depth = depth;
+      this.frames = Arrays.copyOf(search.frames, (depth + 1) << FRAME_SHIFT);
+    }
+
+    /**
+     * Get how many cells of the path are already decided
+     */
+    public int getDepth() {
+      return depth;
+    }
+  }
+
+  private final OCRArray2D matrix;
+  private final int width;
+  private final int height;
+  private final int bufferSize;
+  private final int[] values;
+  private final long[] used;
+
+  private final int[] frames;
+  private int depth = 0;
+  // Frames below this belong to whoever this search was split from
+  private int floor = 0;
+  private int pathLength = 0;
+  private Status status = Status.EXHAUSTED;
+
+  private int[][] sequences;
+  private int[] overlaps;
+  // Sequences completed by finishing each prefix of the permutation
+  private int[] prefixMasks;
+  private Incumbent incumbent = null;
+  private final SolverMetrics metrics = Metrics.ENABLED ? new SolverMetrics() : null;
+
+  public IterativeSearch(OCRArray2D matrix, int bufferSize) {
+    if (!supports(matrix))
+      throw new IllegalArgumentException("matrix must be a grid");
+    this.matrix = matrix;
+    this.width = matrix.getWidth();
+    this.height = matrix.getHeight();
+    this.bufferSize = Math.max(bufferSize, 0);
+
+    values = new int[width * height];
+    for (int y=0; y<height; y++) {
+      for (int x=0; x<width; x++) {
+        values[y * width + x] = matrix.get(x, y).value;
+      }
+    }
+    used = new long[(values.length + Long.SIZE - 1) / Long.SIZE];
+    frames = new int[(this.bufferSize + 1) << FRAME_SHIFT];
+  }
+
+  public static boolean supports(OCRArray2D matrix) {
+    return matrix.isGrid() && matrix.getHeight() > 0 && matrix.getWidth() > 0;
+  }
+
+  /**
+   * Give up searching once the incumbent's deadline passes, and offer it
+   * every path that completes some sequences
+   */
+  public void setIncumbent(Incumbent incumbent) {
+    this.incumbent = incumbent;
+  }
+
+  /**
+   * Search for a path which completes all of the given sequences in order.
+   * @return true if a path was found, in which case it is available through
+   *         {@link #getPath()}
+   */
+  public boolean search(SequencePermutation sequences) {
+    start(sequences);
+    return run(Long.MAX_VALUE) == Status.FOUND;
+  }
+
+  /**
+   * Set up a search for the given sequences, without taking any steps yet
+   */
+  public void start(SequencePermutation sequences) {
+    int count = sequences.size();
+    this.sequences = new int[count][];
+    this.overlaps = new int[count];
+    this.prefixMasks = new int[count + 1];
+    for (int i=0; i<count; i++) {
+      List<OCRArrayNode> seq = sequences.get(i);
+      int[] seqValues = new int[seq.size()];
+      for (int j=0; j<seqValues.length; j++) {
+        seqValues[j] = seq.get(j).value;
+      }
+      this.sequences[i] = seqValues;
+      overlaps[i] = sequences.overlap(i);
+      prefixMasks[i + 1] = prefixMasks[i] | 1 << sequences.sequenceIndex(i);
+    }
+
+    Arrays.fill(used, 0L);
+    depth = 0;
+    floor = 0;
+    pathLength = 0;
+    if (Metrics.ENABLED)
+      metrics.permutations++;
+    switch (enter(0, 0, 0)) {
+      case ENTERED:
+        status = Status.SUSPENDED;
+        break;
+      case COMPLETED:
+        status = Status.FOUND;
+        break;
+      default:
+        status = Status.EXHAUSTED;
+    }
+  }
+
+  /**
+   * Carry on searching for at most `maxSteps` steps, where a step tries one
+   * cell of the path
+   * @return {@link Status#SUSPENDED} if there's more to search, otherwise
+   *         the outcome of the search, which won't change on further calls
+   */
+  public Status run(long maxSteps) {
+    if (status != Status.SUSPENDED)
+      return status;
+
+    // One loop over the stack rather than a method per step, which the JIT
+    // would find too big to inline
+    int depth = this.depth;
+    for (long steps=0; steps<maxSteps; steps++) {
+      if (incumbent != null && incumbent.checkExpired()) {
+        status = Status.EXPIRED;
+        break;
+      }
+
+      // Try the next candidate of the top frame
+      int base = depth << FRAME_SHIFT;
+      int seqValueIndex = frames[base + SEQ_VALUE_INDEX];
+      int lastCell = depth == 0 ? 0 : frames[base - FRAME_SIZE + CELL];
+      int first = frames[base + FIRST];
+      int value = frames[base + TARGET];
+      int limit = frames[base + LIMIT];
+      int step, count;
+      if ((depth & 1) == 0) {
+        step = 1;
+        count = width;
+      } else {
+        step = width;
+        count = height;
+      }
+
+      int cell = -1;
+      int nextValueIndex = seqValueIndex;
+      int i = frames[base + CURSOR];
+      for (; cell == -1 && i < limit; i++) {
+        if (i < count) {
+          int candidate = first + i * step;
+          if (values[candidate] != value)
+            continue;
+          if (isUsed(candidate)) {
+            if (Metrics.ENABLED)
+              metrics.containsRejections++;
+            continue;
+          }
+          cell = candidate;
+          nextValueIndex = seqValueIndex + 1;
+        } else {
+          // Bridge through this row/col exactly like the recursive search did
+          // (including leaving out its last cell)
+          int candidate = first + (i - count) * step;
+          if (depth != 0 && candidate == lastCell)
+            continue;
+          if (Metrics.ENABLED)
+            metrics.bridges++;
+          cell = candidate;
+        }
+      }
+      frames[base + CURSOR] = i;
+
+      if (cell == -1) {
+        // Out of candidates; backtrack
+        if (depth == floor) {
+          status = Status.EXHAUSTED;
+          break;
+        }
+        depth--;
+        unmark(depth);
+        continue;
+      }
+
+      frames[base + CELL] = cell;
+      if (isUsed(cell)) {
+        frames[base + MARKED] = 0;
+      } else {
+        frames[base + MARKED] = 1;
+        used[cell >>> 6] |= 1L << cell;
+      }
+
+      int entered = enter(depth + 1, frames[base + SEQ_INDEX], nextValueIndex);
+      if (entered == ENTERED) {
+        depth++;
+      } else if (entered == COMPLETED) {
+        status = Status.FOUND;
+        break;
+      } else {
+        unmark(depth);
+      }
+    }
+    this.depth = depth;
+    return status;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Push the frame for buffer index `frame`, moving on to the next sequence
+   * if the last one was just completed
+   */
+  private int enter(int frame, int seqIndex, int seqValueIndex) {
+    if (Metrics.ENABLED)
+      metrics.nodes++;
+
+    int[] seq = sequences[seqIndex];
+    while (seqValueIndex == seq.length) {
+      // Finished this sequence; move to the next one, skipping its overlap
+      seqIndex++;
+      if (incumbent != null && incumbent.improves(prefixMasks[seqIndex]))
+        incumbent.offer(prefixMasks[seqIndex], getPath(frame));
+      if (seqIndex == sequences.length) {
+        pathLength = frame;
+        return COMPLETED;
+      }
+      seq = sequences[seqIndex];
+      seqValueIndex = overlaps[seqIndex];
+    }
+
+    if (seq.length - seqValueIndex + frame > bufferSize) {
+      if (Metrics.ENABLED)
+        metrics.overflowPrunes++;
+      return PRUNED;
+    }
+
+    int base = frame << FRAME_SHIFT;
+    int count = (frame & 1) == 0 ? width : height;
+    frames[base + SEQ_INDEX] = seqIndex;
+    frames[base + SEQ_VALUE_INDEX] = seqValueIndex;
+    frames[base + CURSOR] = 0;
+    frames[base + LIMIT] = seqValueIndex == 0 && frame + seq.length < bufferSize
+        ? 2 * count - 1
+        : count;
+    int lastCell = frame == 0 ? 0 : frames[base - FRAME_SIZE + CELL];
+    frames[base + FIRST] = (frame & 1) == 0 ? lastCell - lastCell % width : lastCell % width;
+    frames[base + TARGET] = seq[seqValueIndex];
+    return ENTERED;
+  }
+
+  private boolean isUsed(int cell) {
+    return (used[cell >>> 6] & (1L << cell)) != 0;
+  }
+
+  private void unmark(int frame) {
+    int base = frame << FRAME_SHIFT;
+    if (frames[base + MARKED] != 0)
+      used[frames[base + CELL] >>> 6] &= ~(1L << frames[base + CELL]);
+  }
+
+  /**
+   * Copy the state of the search, so it can be continued from here later
+   * @return the snapshot, or null if the search isn't suspended
+   */
+  public Snapshot snapshot() {
+    return status == Status.SUSPENDED ? new Snapshot(this, floor, depth) : null;
+  }
+
+  /**
+   * Continue from a snapshot of a search of the same matrix and buffer size
+   */
+  public void restore(Snapshot snapshot) {
+    sequences = snapshot.sequences;
+    overlaps = snapshot.overlaps;
+    prefixMasks = snapshot.prefixMasks;
+    floor = snapshot.floor;
+    depth = snapshot.depth;
+    System.arraycopy(snapshot.frames, 0, frames, 0, snapshot.frames.length);
+
+    Arrays.fill(used, 0L);
+    for (int frame=0; frame<depth; frame++) {
+      int base = frame << FRAME_SHIFT;
+      if (frames[base + MARKED] != 0)
+        used[frames[base + CELL] >>> 6] |= 1L << frames[base + CELL];
+    }
+    pathLength = 0;
+    status = Status.SUSPENDED;
+  }
+
+  /**
+   * Give away the candidates the shallowest frame hasn't tried yet. This
+   * search won't try them anymore; restoring the snapshot into another
+   * search tries them there instead.
+   *
+   * Everything this search has left comes before the subtree given away in
+   * the order of a serial search, so when both find a path, this search's
+   * path is the one a serial search would have found.
+   * @return the subtree given away, or null if there's nothing to give
+   */
+  public Snapshot split() {
+    if (status != Status.SUSPENDED)
+      return null;
+    for (int frame=floor; frame<=depth; frame++) {
+      int base = frame << FRAME_SHIFT;
+      if (frames[base + CURSOR] < frames[base + LIMIT]) {
+        Snapshot stolen = new Snapshot(this, frame, frame);
+        frames[base + LIMIT] = frames[base + CURSOR];
+        return stolen;
+      }
+    }
+    return null;
+  }
+
+  public ArrayList<OCRArrayNode> getPath() {
+    return getPath(pathLength);
+  }
+
+  private ArrayList<OCRArrayNode> getPath(int pathLength) {
+    ArrayList<OCRArrayNode> nodes = new ArrayList<>(pathLength);
+    for (int i=0; i<pathLength; i++) {
+      int cell = frames[(i << FRAME_SHIFT) + CELL];
+      nodes.add(matrix.get(cell % width, cell / width));
+    }
+    return nodes;
+  }
+
+  /**
+   * @return counters of every search so far, or null if {@link Metrics} are
+   *         disabled
+   */
+  public SolverMetrics getMetrics() {
+    return metrics;
+  }
+
+}
@@ -0,0 +1,70 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events for {@link Metrics}. Only loaded once we know the
+ * JVM has Flight Recorder.
+ */
+class JfrEvents {
+
+  private static final String CATEGORY = "Breach Protocol Solver";
+
+  @Name("breachSolver.Solve")
+  @Label("Solve")
+  @Category(CATEGORY)
+  static class SolveEvent extends Event {
+    @Label("Engine") String engine;
+    // Committed after the fact, so the event's own duration is always 0
+    @Label("Solve Time") @Timespan(Timespan.NANOSECONDS) long solveTime;
+    @Label("Solved") boolean solved;
+    @Label("Partial") boolean partial;
+    @Label("Cache Hit") boolean cacheHit;
+    @Label("Nodes") long nodes;
+    @Label("Bridges") long bridges;
+    @Label("Overflow Prunes") long overflowPrunes;
+    @Label("Bound Prunes") long boundPrunes;
+    @Label("Used Cell Rejections") long containsRejections;
+    @Label("Permutations") long permutations;
+  }
+
+  @Name("breachSolver.DetectStage")
+  @Label("Detection Stage")
+  @Category(CATEGORY)
+  static class DetectStageEvent extends Event {
+    @Label("Stage") String stage;
+    @Label("Stage Time") @Timespan(Timespan.NANOSECONDS) long stageTime;
+  }
+
+  static void commitSolve(SolverMetrics metrics) {
+    SolveEvent event = new SolveEvent();
+    if (!event.shouldCommit())
+      return;
+    event.engine = String.valueOf(metrics.getEngine());
+    event.solveTime = metrics.getDurationNanos();
+    event.solved = metrics.isSolved();
+    event.partial = metrics.isPartial();
+    event.cacheHit = metrics.isCacheHit();
+    event.nodes = metrics.getNodes();
+    event.bridges = metrics.getBridges();
+    event.overflowPrunes = metrics.getOverflowPrunes();
+    event.boundPrunes = metrics.getBoundPrunes();
+    event.containsRejections = metrics.getContainsRejections();
+    event.permutations = metrics.getPermutations();
+    event.commit();
+  }
+
+  static void commitDetectStage(String stage, long nanos) {
+    DetectStageEvent event = new DetectStageEvent();
+    if (!event.shouldCommit())
+      return;
+    event.stage = stage;
+    event.stageTime = nanos;
+    event.commit();
+  }
+
+}
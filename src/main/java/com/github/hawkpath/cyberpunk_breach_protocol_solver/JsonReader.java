@@ -0,0 +1,190 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON parser, enough to read puzzle descriptions. Objects become
+ * {@link Map}s, arrays {@link List}s, numbers {@link Double}s and literals
+ * Booleans or null.
+ */
+class JsonReader {
+
+  // Deeper than any puzzle, and shallow enough not to overflow the stack
+  static final int MAX_DEPTH = 64;
+
+  private final String text;
+  private int pos = 0;
+  private int depth = 0;
+
+  private JsonReader(String text) {
+    this.text = text;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the text isn't a single JSON value
+   */
+  public static Object parse(String text) throws IllegalArgumentException {
+    JsonReader reader = new JsonReader(text);
+    Object value = reader.readValue();
+    reader.skipWhitespace();
+    if (reader.pos != text.length())
+      throw reader.error("Unexpected trailing characters");
+    return value;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at position " + pos);
+  }
+
+  private void skipWhitespace() {
+    while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+      pos++;
+  }
+
+  private char peek() {
+    skipWhitespace();
+    if (pos >= text.length())
+      throw error("Unexpected end of input");
+    return text.charAt(pos);
+  }
+
+  private void expect(char c) {
+    if (peek() != c)
+      throw error("Expected '" + c + "'");
+    pos++;
+  }
+
+  private Object readValue() {
+    char c = peek();
+    switch (c) {
+      case '{':
+        return readObject();
+      case '[':
+        return readArray();
+      case '"':
+        return readString();
+      case 't':
+        return readLiteral("true", Boolean.TRUE);
+      case 'f':
+        return readLiteral("false", Boolean.FALSE);
+      case 'n':
+        return readLiteral("null", null);
+      default:
+        if (c == '-' || (c >= '0' && c <= '9'))
+          return readNumber();
+        throw error("Unexpected character '" + c + "'");
+    }
+  }
+
+  private void enter() {
+    if (++depth > MAX_DEPTH)
+      throw error("Nested more than " + MAX_DEPTH + " deep");
+  }
+
+  private Map<String, Object> readObject() {
+    HashMap<String, Object> map = new HashMap<>();
+    expect('{');
+    enter();
+    if (peek() == '}') {
+      pos++;
+      depth--;
+      return map;
+    }
+    while (true) {
+      if (peek() != '"')
+        throw error("Expected a key");
+      String key = readString();
+      expect(':');
+      map.put(key, readValue());
+      if (peek() == ',') {
+        pos++;
+        continue;
+      }
+      expect('}');
+      depth--;
+      return map;
+    }
+  }
+
+  private List<Object> readArray() {
+    ArrayList<Object> list = new ArrayList<>();
+    expect('[');
+    enter();
+    if (peek() == ']') {
+      pos++;
+      depth--;
+      return list;
+    }
+    while (true) {
+      list.add(readValue());
+      if (peek() == ',') {
+        pos++;
+        continue;
+      }
+      expect(']');
+      depth--;
+      return list;
+    }
+  }
+
+  private String readString() {
+    expect('"');
+    StringBuilder sb = new StringBuilder();
+    while (true) {
+      if (pos >= text.length())
+        throw error("Unterminated string");
+      char c = text.charAt(pos++);
+      if (c == '"')
+        return sb.toString();
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      if (pos >= text.length())
+        throw error("Unterminated string");
+      c = text.charAt(pos++);
+      switch (c) {
+        case 'b': sb.append('\b'); break;
+        case 'f': sb.append('\f'); break;
+        case 'n': sb.append('\n'); break;
+        case 'r': sb.append('\r'); break;
+        case 't': sb.append('\t'); break;
+        case 'u':
+          if (pos + 4 > text.length())
+            throw error("Bad unicode escape");
+          try {
+            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+          } catch (NumberFormatException e) {
+            throw error("Bad unicode escape");
+          }
+          pos += 4;
+          break;
+        default:
+          sb.append(c);
+      }
+    }
+  }
+
+  private Double readNumber() {
+    int start = pos;
+    while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) != -1)
+      pos++;
+    try {
+      return Double.valueOf(text.substring(start, pos));
+    } catch (NumberFormatException e) {
+      pos = start;
+      throw error("Bad number");
+    }
+  }
+
+  private Object readLiteral(String literal, Object value) {
+    if (!text.startsWith(literal, pos))
+      throw error("Unexpected character '" + text.charAt(pos) + "'");
+    pos += literal.length();
+    return value;
+  }
+
+}
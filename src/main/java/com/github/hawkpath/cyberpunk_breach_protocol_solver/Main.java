@@ -10,6 +10,7 @@ import org.slf4j.LoggerFactory;
 import java.awt.AWTException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.logging.LogManager;
@@ -18,7 +19,23 @@ public class Main implements NativeKeyListener {
 
   final Logger logger = LoggerFactory.getLogger(Main.class.getName());
 
+  // How closely every code in a box has to match its glyph template
+  private static final float GLYPH_MIN_CONFIDENCE = 0.9f;
+
   String findSolutionKey, clearSolutionKey, bringToTopKey;
+  Solver.Engine solverEngine = Solver.Engine.RECURSIVE;
+  int solverThreads = 1;
+  int detectorThreads = 1;
+  boolean glyphTemplates = false;
+  String glyphTemplateFile = null;
+  int recognitionCacheSize = 0;
+  String recognitionCacheFile = null;
+  long watchInterval = 0;
+  long solverTimeLimit = 0;
+  boolean shortestPath = false;
+  long[] sequenceRewards = null;
+  int solutionCacheSize = 0;
+  String solutionCacheFile = null;
   Detector detector;
   Solver solver;
   Overlay overlay;
@@ -32,9 +49,40 @@ public class Main implements NativeKeyListener {
       logger.error("Screen capture is unavailable on your system.");
       System.exit(1);
     }
+    detector.setParallelism(detectorThreads);
+    detector.warmUp();
+    if (glyphTemplates) {
+      int[] values = Detector.possibleCellValues();
+      detector.setGlyphClassifier(glyphTemplateFile == null
+          ? new GlyphClassifier(values, GLYPH_MIN_CONFIDENCE)
+          : new GlyphClassifier(values, GLYPH_MIN_CONFIDENCE, Utils.getRelativeFile(glyphTemplateFile)));
+    }
+    if (recognitionCacheSize > 0) {
+      RecognitionCache cache = recognitionCacheFile == null
+          ? new RecognitionCache(recognitionCacheSize)
+          : new RecognitionCache(recognitionCacheSize, Utils.getRelativeFile(recognitionCacheFile));
+      detector.setRecognitionCache(cache);
+      Runtime.getRuntime().addShutdownHook(new Thread(cache::close));
+    }
     solver = new Solver();
+    solver.setEngine(solverEngine);
+    solver.setParallelism(solverThreads);
+    solver.setTimeLimit(solverTimeLimit);
+    solver.setShortestPath(shortestPath);
+    solver.setSequenceRewards(sequenceRewards);
+    if (solutionCacheSize > 0) {
+      SolutionCache cache = solutionCacheFile == null
+          ? new SolutionCache(solutionCacheSize)
+          : new SolutionCache(solutionCacheSize, Utils.getRelativeFile(solutionCacheFile));
+      solver.setSolutionCache(cache);
+      Runtime.getRuntime().addShutdownHook(new Thread(cache::close));
+    }
     overlay = new Overlay();
     overlay.setVisible(setVisible);
+    if (watchInterval > 0) {
+      new ScreenWatcher(detector, watchInterval, this::runSuite, overlay::clearSolution).start();
+      logger.info("Watching for breach screens every {} ms", watchInterval);
+    }
   }
 
   private void loadConfig() {
@@ -49,6 +97,97 @@ public class Main implements NativeKeyListener {
     findSolutionKey = config.get("findSolution").toLowerCase();
     clearSolutionKey = config.get("clearSolution").toLowerCase();
     bringToTopKey = config.get("bringToTop").toLowerCase();
+
+    if (config.containsKey("solverEngine")) {
+      try {
+        solverEngine = Solver.Engine.valueOf(config.get("solverEngine").toUpperCase());
+      } catch (IllegalArgumentException e) {
+        logger.warn("Unknown solver engine \"{}\", using {}", config.get("solverEngine"), solverEngine);
+      }
+    }
+
+    if (config.containsKey("solverThreads")) {
+      try {
+        solverThreads = Math.max(Integer.parseInt(config.get("solverThreads")), 1);
+      } catch (NumberFormatException e) {
+        logger.warn("Bad solverThreads value \"{}\", using {}", config.get("solverThreads"), solverThreads);
+      }
+    }
+
+    if (config.containsKey("detectorThreads")) {
+      try {
+        detectorThreads = Math.max(Integer.parseInt(config.get("detectorThreads")), 1);
+      } catch (NumberFormatException e) {
+        logger.warn("Bad detectorThreads value \"{}\", using {}", config.get("detectorThreads"), detectorThreads);
+      }
+    }
+
+    if (config.containsKey("ocrBackend")) {
+      String backend = config.get("ocrBackend").toLowerCase();
+      if (backend.equals("templates"))
+        glyphTemplates = true;
+      else if (!backend.equals("tesseract"))
+        logger.warn("Unknown OCR backend \"{}\", using tesseract", config.get("ocrBackend"));
+    }
+    glyphTemplateFile = config.get("glyphTemplateFile");
+
+    if (config.containsKey("recognitionCacheSize")) {
+      try {
+        recognitionCacheSize = Integer.parseInt(config.get("recognitionCacheSize"));
+      } catch (NumberFormatException e) {
+        logger.warn("Bad recognitionCacheSize value \"{}\", not caching recognitions", config.get("recognitionCacheSize"));
+      }
+    }
+    recognitionCacheFile = config.get("recognitionCacheFile");
+
+    if (config.containsKey("watchInterval")) {
+      try {
+        watchInterval = Math.max(Long.parseLong(config.get("watchInterval")), 0);
+      } catch (NumberFormatException e) {
+        logger.warn("Bad watchInterval value \"{}\", not watching", config.get("watchInterval"));
+      }
+    }
+
+    if (config.containsKey("solverTimeLimit")) {
+      try {
+        solverTimeLimit = Math.max(Long.parseLong(config.get("solverTimeLimit")), 0);
+      } catch (NumberFormatException e) {
+        logger.warn("Bad solverTimeLimit value \"{}\", using {}", config.get("solverTimeLimit"), solverTimeLimit);
+      }
+    }
+
+    if (config.containsKey("shortestPath"))
+      shortestPath = Boolean.parseBoolean(config.get("shortestPath"));
+
+    if (config.containsKey("sequenceRewards")) {
+      try {
+        String[] values = config.get("sequenceRewards").split(",");
+        sequenceRewards = new long[values.length];
+        for (int i=0; i<values.length; i++) {
+          sequenceRewards[i] = Long.parseLong(values[i].trim());
+          if (sequenceRewards[i] < 0)
+            throw new NumberFormatException("negative reward");
+        }
+      } catch (NumberFormatException e) {
+        logger.warn("Bad sequenceRewards value \"{}\", favoring higher priority sequences", config.get("sequenceRewards"));
+        sequenceRewards = null;
+      }
+      if (sequenceRewards != null && solverEngine != Solver.Engine.AUTOMATON)
+        logger.warn("sequenceRewards is only used by the automaton engine");
+    }
+
+    if (config.containsKey("solutionCacheSize")) {
+      try {
+        solutionCacheSize = Integer.parseInt(config.get("solutionCacheSize"));
+      } catch (NumberFormatException e) {
+        logger.warn("Bad solutionCacheSize value \"{}\", not caching solutions", config.get("solutionCacheSize"));
+      }
+    }
+    solutionCacheFile = config.get("solutionCacheFile");
+
+    // Has to be set before the solver and detector are first used
+    if (Boolean.parseBoolean(config.get("metrics")))
+      System.setProperty(Metrics.PROPERTY, "true");
   }
 
   public void nativeKeyTyped(NativeKeyEvent e) {}
@@ -71,15 +210,19 @@ public class Main implements NativeKeyListener {
     }
   }
 
-  public void runSuite() {
-    overlay.clearSolution();
-    try {
-      Thread.sleep(100);
-    } catch (InterruptedException e) {
-      // Let the last solution be unpainted
+  public synchronized void runSuite() {
+    if (overlay.hasSolution()) {
+      overlay.clearSolution();
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        // Let the last solution be unpainted
+      }
     }
 
     DetectionResult detection = detector.detect();
+    if (detector.getMetrics() != null)
+      logger.debug("{}", detector.getMetrics());
 
     if (detection == null) {
       overlay.clearSolution();
@@ -97,6 +240,9 @@ public class Main implements NativeKeyListener {
       overlay.clearSolution();
       return;
     }
+    if (solver.isPartial())
+      // Still worth showing; it completes as much as we could find in time
+      logger.info("Solver ran out of time, showing the best solution found");
 
     if (logger.isDebugEnabled()) {
       StringBuilder sb = new StringBuilder();
@@ -121,6 +267,15 @@ public class Main implements NativeKeyListener {
       System.out.println("WARNING: Logging not configured (console output only)");
     }
 
+    if (args.length > 0 && args[0].equals("batch")) {
+      BatchSolver.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length > 0 && args[0].equals("detect")) {
+      FrameReplay.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+
     Main main = new Main(true);
 
     try {
@@ -0,0 +1,46 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+/**
+ * Switch for the solver and detector instrumentation (see
+ * {@link SolverMetrics} and {@link DetectorMetrics}).
+ *
+ * Metrics are enabled by the system property {@value #PROPERTY} (or the
+ * `metrics` config key), which is read once, when the solver or detector is
+ * first used. The flag is a constant after that, so the counters in the
+ * search loops are compiled away when it's off.
+ *
+ * When enabled, metrics are also committed as JDK Flight Recorder events, if
+ * the JVM has it (JDK 11+, or 8u262+).
+ */
+public final class Metrics {
+
+  public static final String PROPERTY = "breachSolver.metrics";
+  static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+  private static final boolean JFR_AVAILABLE = ENABLED && isJfrAvailable();
+
+  private Metrics() {}
+
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  private static boolean isJfrAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  static void commit(SolverMetrics metrics) {
+    if (JFR_AVAILABLE)
+      JfrEvents.commitSolve(metrics);
+  }
+
+  static void commitStage(String stage, long nanos) {
+    if (JFR_AVAILABLE)
+      JfrEvents.commitDetectStage(stage, nanos);
+  }
+
+}
@@ -59,6 +59,7 @@ public class OCRArray2D implements Iterable<List<OCRArrayNode>> {
   }
 
   public void addRow() {
+    makeFieldsDirty();
     lastRow = new ArrayList<>();
     rows.add(lastRow);
   }
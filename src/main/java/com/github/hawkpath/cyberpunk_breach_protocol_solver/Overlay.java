@@ -72,6 +72,10 @@ public class Overlay extends JFrame {
     overlayComponent.repaint();
   }
 
+  public boolean hasSolution() {
+    return overlayComponent.solution != null;
+  }
+
   public void forceOnTop() {
     setAlwaysOnTop(false);
     setAlwaysOnTop(true);
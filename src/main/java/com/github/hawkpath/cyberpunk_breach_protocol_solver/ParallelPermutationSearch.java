@@ -0,0 +1,148 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches sequence permutations concurrently with {@link BitmaskSearch},
+ * while still returning the solution of the highest priority permutation
+ * that has one, exactly like searching them one after another would.
+ *
+ * Permutations are numbered in priority order. Whenever one is solved, the
+ * shared cutoff is lowered to its number, which makes every search of a
+ * lower priority permutation give up. Results are collected in priority
+ * order, so the first solution collected is the one the serial search would
+ * have found. Only a bounded window of permutations is in flight at once,
+ * and permutations are pulled lazily from the {@link SequencePermutator}.
+ *
+ * Given an {@link Incumbent}, every search stops once its deadline passes.
+ *
+ * With {@link Metrics} on, each task counts into its own metrics, which are
+ * added up once it's been joined. Tasks still in flight when the search
+ * returns are waited for rather than cancelled, so none of them is still
+ * counting afterwards; the cutoff makes them give up straight away.
+ */
+class ParallelPermutationSearch {
+
+  private final ForkJoinPool pool;
+  private final int window;
+  private final SolverMetrics metrics = Metrics.ENABLED ? new SolverMetrics() : null;
+
+  public ParallelPermutationSearch(ForkJoinPool pool) {
+    this.pool = pool;
+    this.window = pool.getParallelism() * 2;
+  }
+
+  /**
+   * @return counters of every permutation searched, or null if
+   *         {@link Metrics} are disabled
+   */
+  public SolverMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @param incumbent deadline of the search and keeper of its best partial
+   *                  path, or null to search until done
+   */
+  public ArrayList<OCRArrayNode> search(
+      OCRArray2D matrix, int bufferSize, Iterable<SequencePermutation> permutations,
+      Incumbent incumbent
+  ) {
+    AtomicInteger cutoff = new AtomicInteger(Integer.MAX_VALUE);
+    ArrayDeque<PermutationTask> inFlight = new ArrayDeque<>(window);
+    Iterator<SequencePermutation> iterator = permutations.iterator();
+    int index = 0;
+
+    try {
+      while (true) {
+        while (inFlight.size() < window && iterator.hasNext() && index < cutoff.get()) {
+          PermutationTask task = new PermutationTask(
+              matrix, bufferSize, iterator.next(), index++, cutoff, incumbent
+          );
+          pool.execute(task);
+          inFlight.add(task);
+        }
+
+        PermutationTask head = inFlight.poll();
+        if (head == null)
+          // Every permutation failed
+          return null;
+        ArrayList<OCRArrayNode> path = head.join();
+        if (Metrics.ENABLED && head.metrics != null)
+          metrics.add(head.metrics);
+        if (path != null)
+          // Everything before this permutation failed, so this is the one
+          return path;
+        if (incumbent != null && incumbent.isExpired())
+          return null;
+      }
+    } finally {
+      // Whatever is still running can't beat what we have
+      cutoff.set(-1);
+      for (PermutationTask task : inFlight) {
+        if (Metrics.ENABLED) {
+          task.quietlyJoin();
+          if (task.metrics != null)
+            metrics.add(task.metrics);
+        } else {
+          task.cancel(false);
+        }
+      }
+    }
+  }
+
+  private static void lowerCutoff(AtomicInteger cutoff, int index) {
+    int current = cutoff.get();
+    while (index < current && !cutoff.compareAndSet(current, index)) {
+      current = cutoff.get();
+    }
+  }
+
+  private static class PermutationTask extends RecursiveTask<ArrayList<OCRArrayNode>> {
+
+    private final OCRArray2D matrix;
+    private final int bufferSize;
+    private final SequencePermutation permutation;
+    private final int index;
+    private final AtomicInteger cutoff;
+    private final Incumbent incumbent;
+    // Counters of the search, or null if it was never run
+    private SolverMetrics metrics = null;
+
+    PermutationTask(
+        OCRArray2D matrix, int bufferSize, SequencePermutation permutation,
+        int index, AtomicInteger cutoff, Incumbent incumbent
+    ) {
+      this.matrix = matrix;
+      this.bufferSize = bufferSize;
+      this.permutation = permutation;
+      this.index = index;
+      this.cutoff = cutoff;
+      this.incumbent = incumbent;
+    }
+
+    @Override
+    protected ArrayList<OCRArrayNode> compute() {
+      if (cutoff.get() < index)
+        return null;
+
+      BitmaskSearch search = new BitmaskSearch(matrix, bufferSize);
+      search.setCutoff(cutoff, index);
+      search.setIncumbent(incumbent);
+      boolean found = search.search(permutation);
+      if (Metrics.ENABLED)
+        metrics = search.getMetrics();
+      if (!found)
+        return null;
+
+      lowerCutoff(cutoff, index);
+      return search.getPath();
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Frames replayed from a raw dump, memory-mapped so there's nothing to decode:
+ * each frame is copied straight into a reused image. The file is a small
+ * header followed by every frame's pixels as big-endian ARGB ints, row by
+ * row. All frames are the same size.
+ */
+class RawFrameSource implements FrameSource {
+
+  static final int FILE_MAGIC = 0x42505246;  // "BPRF"
+  private static final int FILE_VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+
+  private final RandomAccessFile file;
+  private final int width;
+  private final int height;
+  private final long frameCount;
+  // Frames are mapped in chunks, since a mapping can't exceed 2 GB
+  private final int framesPerChunk;
+  private final ArrayList<MappedByteBuffer> chunks = new ArrayList<>();
+  private final BufferedImage frame;
+  private long index = -1;
+
+  public RawFrameSource(File path) throws IOException {
+    file = new RandomAccessFile(path, "r");
+    try {
+      if (file.length() < HEADER_SIZE || file.readInt() != FILE_MAGIC || file.readInt() != FILE_VERSION)
+        throw new IOException("Not a raw frame file: " + path);
+      width = file.readInt();
+      height = file.readInt();
+      if (width < 1 || height < 1)
+        throw new IOException("Bad frame size in " + path);
+      long frameSize = 4L * width * height;
+      if (frameSize > Integer.MAX_VALUE)
+        throw new IOException("Frames in " + path + " are too big");
+      frameCount = (file.length() - HEADER_SIZE) / frameSize;
+      framesPerChunk = (int) (Integer.MAX_VALUE / frameSize);
+
+      FileChannel channel = file.getChannel();
+      for (long first=0; first<frameCount; first+=framesPerChunk) {
+        long frames = Math.min(framesPerChunk, frameCount - first);
+        chunks.add(channel.map(
+            FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * frameSize, frames * frameSize
+        ));
+      }
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+    frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+  }
+
+  public long getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * Go back to before the first frame, to replay them again
+   */
+  public void rewind() {
+    index = -1;
+  }
+
+  @Override
+  public boolean advance() {
+    if (index + 1 >= frameCount)
+      return false;
+    index++;
+    int[] pixels = ((DataBufferInt)frame.getRaster().getDataBuffer()).getData();
+    ByteBuffer chunk = chunks.get((int) (index / framesPerChunk)).duplicate();
+    chunk.position((int) (index % framesPerChunk) * pixels.length * 4);
+    IntBuffer ints = chunk.asIntBuffer();
+    ints.get(pixels, 0, pixels.length);
+    return true;
+  }
+
+  @Override
+  public Dimension getScreenSize() {
+    return new Dimension(width, height);
+  }
+
+  @Override
+  public BufferedImage capture(Rectangle region) {
+    if (index < 0)
+      throw new IllegalStateException("no current frame");
+    return FrameSource.crop(frame, region);
+  }
+
+  @Override
+  public void close() throws IOException {
+    chunks.clear();
+    file.close();
+  }
+
+  /**
+   * Record every frame of a source into a raw frame file
+   * @param maxFrames the most frames to record, since the live screen never
+   *                  runs out
+   * @return the number of frames recorded
+   * @throws IOException if the frames aren't all the same size
+   */
+  public static long record(FrameSource source, File path, long maxFrames) throws IOException {
+    long count = 0;
+    try (RandomAccessFile out = new RandomAccessFile(path, "rw")) {
+      out.setLength(0);
+      FileChannel channel = out.getChannel();
+      Dimension size = null;
+      ByteBuffer buffer = null;
+      while (count < maxFrames && source.advance()) {
+        Dimension frameSize = source.getScreenSize();
+        if (size == null) {
+          size = frameSize;
+          ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+          header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(size.width).putInt(size.height);
+          header.flip();
+          channel.write(header);
+          buffer = ByteBuffer.allocateDirect(4 * size.width * size.height);
+        } else if (!size.equals(frameSize)) {
+          throw new IOException("Frame " + count + " isn't " + size.width + "x" + size.height);
+        }
+
+        BufferedImage img = source.capture(new Rectangle(size));
+        buffer.clear();
+        buffer.asIntBuffer().put(((DataBufferInt)img.getRaster().getDataBuffer()).getData());
+        buffer.limit(buffer.capacity());
+        while (buffer.hasRemaining())
+          channel.write(buffer);
+        count++;
+      }
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,160 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of what codes have been read as, keyed by a
+ * perceptual hash of the binarized code (see {@link #hash}), so codes which
+ * have been seen before don't need OCR. Can be saved to a file when closed and
+ * loaded back on startup.
+ */
+public class RecognitionCache {
+
+  final static Logger logger = LoggerFactory.getLogger(RecognitionCache.class.getName());
+
+  private static final int FILE_MAGIC = 0x42505243;  // "BPRC"
+  // 2: only exact reads are cached, so older files may hold misreads
+  private static final int FILE_VERSION = 2;
+  // The hash is one bit per block of an 8x8 grid over the code
+  private static final int HASH_SIZE = 8;
+
+  private final int capacity;
+  private final LinkedHashMap<Long, Integer> entries;
+  private File file = null;
+
+  private long hits = 0;
+  private long misses = 0;
+
+  public RecognitionCache(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive");
+    this.capacity = capacity;
+    entries = new LinkedHashMap<Long, Integer>(capacity * 4 / 3 + 1, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+        return size() > RecognitionCache.this.capacity;
+      }
+    };
+  }
+
+  /**
+   * Create a cache saved to a file when closed, loading any entries already
+   * in it
+   */
+  public RecognitionCache(int capacity, File path) {
+    this(capacity);
+    file = path;
+    if (!path.exists())
+      return;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+      if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION)
+        throw new IOException("not a recognition cache file, or an old one");
+      int count = in.readInt();
+      for (int i=0; i<count; i++) {
+        long hash = in.readLong();
+        entries.put(hash, in.readInt());
+      }
+      logger.debug("Loaded {} cached recognitions", entries.size());
+    } catch (IOException e) {
+      logger.warn("Failed to load recognition cache file", e);
+      entries.clear();
+    }
+  }
+
+  /**
+   * Save the cache file, if there is one
+   */
+  public synchronized void close() {
+    if (file == null)
+      return;
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(FILE_VERSION);
+      out.writeInt(entries.size());
+      // Least recently used first, so they're loaded back in the same order
+      for (Map.Entry<Long, Integer> entry : entries.entrySet()) {
+        out.writeLong(entry.getKey());
+        out.writeInt(entry.getValue());
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to save recognition cache file", e);
+    }
+    file = null;
+  }
+
+  /**
+   * Hash the ink of a code in a binarized image (black on white): its bounds
+   * are split into an 8x8 grid, with a bit set for each block that is at
+   * least half ink. Small changes in scale, position and stray pixels mostly
+   * don't change the hash.
+   * @param bounds the bounds of the code's ink
+   */
+  public static long hash(BufferedImage img, Rectangle bounds) {
+    int width = img.getWidth();
+    int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    long hash = 0;
+    for (int by=0; by<HASH_SIZE; by++) {
+      int top = bounds.y + by * bounds.height / HASH_SIZE;
+      int bottom = Math.max(bounds.y + (by + 1) * bounds.height / HASH_SIZE, top + 1);
+      for (int bx=0; bx<HASH_SIZE; bx++) {
+        int left = bounds.x + bx * bounds.width / HASH_SIZE;
+        int right = Math.max(bounds.x + (bx + 1) * bounds.width / HASH_SIZE, left + 1);
+        int ink = 0;
+        for (int y=top; y<bottom; y++) {
+          for (int i = y * width + left, end = y * width + right; i < end; i++) {
+            if ((pixels[i] & 0xFFFFFF) == 0)
+              ink++;
+          }
+        }
+        if (2 * ink >= (bottom - top) * (right - left))
+          hash |= 1L << (by * HASH_SIZE + bx);
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Get what a code with this hash was read as
+   * @return the value, or null if it hasn't been seen
+   */
+  public synchronized Integer get(long hash) {
+    Integer value = entries.get(hash);
+    if (value == null)
+      misses++;
+    else
+      hits++;
+    return value;
+  }
+
+  public synchronized void put(long hash, int value) {
+    entries.put(hash, value);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+}
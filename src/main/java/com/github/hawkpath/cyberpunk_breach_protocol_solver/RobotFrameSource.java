@@ -0,0 +1,39 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.awt.AWTException;
+import java.awt.Dimension;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.image.BufferedImage;
+
+/**
+ * Frames captured from the screen as it is right now
+ */
+class RobotFrameSource implements FrameSource {
+
+  private final Robot robot;
+
+  public RobotFrameSource() throws AWTException {
+    robot = new Robot();
+  }
+
+  @Override
+  public boolean advance() {
+    return true;
+  }
+
+  @Override
+  public Dimension getScreenSize() {
+    DisplayMode display = GraphicsEnvironment.getLocalGraphicsEnvironment()
+        .getDefaultScreenDevice().getDisplayMode();
+    return new Dimension(display.getWidth(), display.getHeight());
+  }
+
+  @Override
+  public BufferedImage capture(Rectangle region) {
+    return robot.createScreenCapture(region);
+  }
+
+}
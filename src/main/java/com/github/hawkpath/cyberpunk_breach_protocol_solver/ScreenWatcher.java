@@ -0,0 +1,102 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the screen with {@link Detector#probe()} and runs a callback when a
+ * breach screen appears or changes, so there's no need to press a hotkey.
+ * Probes are a couple of one pixel high captures, so watching costs next to
+ * nothing while nothing changes.
+ *
+ * A new signature has to be seen twice in a row before it counts, so the
+ * callback doesn't run on a screen that's still animating in. The signature
+ * after the callback is taken as the new baseline, since whatever the
+ * callback puts on screen (the solution overlay) may show up in the probes.
+ */
+class ScreenWatcher {
+
+  final static Logger logger = LoggerFactory.getLogger(ScreenWatcher.class.getName());
+
+  private final Detector detector;
+  private final long intervalMillis;
+  private final Runnable onChange;
+  private final Runnable onGone;
+  private ScheduledExecutorService timer = null;
+
+  // Only touched by the timer thread
+  private long baseline = 0;
+  private long pending = 0;
+  private boolean settling = false;
+
+  /**
+   * @param onChange run when a breach screen appears or changes
+   * @param onGone run when the breach screen goes away
+   */
+  public ScreenWatcher(Detector detector, long intervalMillis, Runnable onChange, Runnable onGone) {
+    if (intervalMillis < 1)
+      throw new IllegalArgumentException("intervalMillis must be positive");
+    this.detector = detector;
+    this.intervalMillis = intervalMillis;
+    this.onChange = onChange;
+    this.onGone = onGone;
+  }
+
+  public synchronized void start() {
+    if (timer != null)
+      return;
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "screen-watcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.scheduleWithFixedDelay(this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void stop() {
+    if (timer != null) {
+      timer.shutdownNow();
+      timer = null;
+    }
+  }
+
+  private void sample() {
+    try {
+      long signature = detector.probe();
+      if (settling) {
+        settling = false;
+        if (signature != 0) {
+          baseline = signature;
+          pending = 0;
+          return;
+        }
+      }
+      if (signature == baseline) {
+        pending = 0;
+        return;
+      }
+      if (signature == 0) {
+        baseline = 0;
+        pending = 0;
+        onGone.run();
+        return;
+      }
+      if (signature != pending) {
+        // Wait for it to hold still
+        pending = signature;
+        return;
+      }
+
+      onChange.run();
+      settling = true;
+    } catch (Exception e) {
+      // Keep watching; an exception would cancel the schedule
+      logger.error("Unexpected error", e);
+    }
+  }
+
+}
@@ -0,0 +1,205 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton matching every sequence at once. Feeding it the
+ * values of a path one at a time tells us which sequences the path has
+ * completed so far, including ones that overlap in ways a pairwise overlap
+ * can't express.
+ *
+ * Sequence i is reported as bit {@code 1 << i} of {@link #getOutput(int)},
+ * where sequence 0 has the highest priority.
+ */
+class SequenceAutomaton {
+
+  public static final int ROOT = 0;
+  public static final int MAX_SEQUENCES = Integer.SIZE - 1;
+
+  private final int sequenceCount;
+  private final int[] sequenceLengths;
+  // Distinct values found in the sequences; anything else maps to `symbolCount`
+  private final int[] alphabet;
+  private final int symbolCount;
+  private int stateCount;
+  private int[] transitions;
+  private int[] output;
+  private int[] depth;
+  // Sequences each trie state is a prefix of
+  private int[] prefixOf;
+  // progress[state * sequenceCount + seq] is how much of seq is matched
+  private int[] progress;
+
+  public SequenceAutomaton(List<? extends List<OCRArrayNode>> sequences) {
+    sequenceCount = sequences.size();
+    if (sequenceCount > MAX_SEQUENCES)
+      throw new IllegalArgumentException("too many sequences: " + sequenceCount);
+
+    int maxStates = 1;
+    int[] values = new int[0];
+    sequenceLengths = new int[sequenceCount];
+    for (int i=0; i<sequenceCount; i++) {
+      List<OCRArrayNode> seq = sequences.get(i);
+      sequenceLengths[i] = seq.size();
+      maxStates += seq.size();
+      for (OCRArrayNode node : seq) {
+        if (indexOf(values, node.value) == -1) {
+          values = Arrays.copyOf(values, values.length + 1);
+          values[values.length - 1] = node.value;
+        }
+      }
+    }
+    alphabet = values;
+    symbolCount = alphabet.length;
+
+    buildTrie(sequences, maxStates);
+    buildTransitions();
+  }
+
+  private static int indexOf(int[] array, int value) {
+    for (int i=0; i<array.length; i++) {
+      if (array[i] == value)
+        return i;
+    }
+    return -1;
+  }
+
+  private void buildTrie(List<? extends List<OCRArrayNode>> sequences, int maxStates) {
+    int width = symbolCount + 1;
+    transitions = new int[maxStates * width];
+    Arrays.fill(transitions, -1);
+    output = new int[maxStates];
+    depth = new int[maxStates];
+    prefixOf = new int[maxStates];
+    prefixOf[ROOT] = allSequences();
+    stateCount = 1;
+
+    for (int i=0; i<sequenceCount; i++) {
+      int state = ROOT;
+      for (OCRArrayNode node : sequences.get(i)) {
+        int index = state * width + indexOf(alphabet, node.value);
+        if (transitions[index] == -1) {
+          depth[stateCount] = depth[state] + 1;
+          transitions[index] = stateCount++;
+        }
+        state = transitions[index];
+        prefixOf[state] |= 1 << i;
+      }
+      output[state] |= 1 << i;
+    }
+  }
+
+  /**
+   * Turn the trie into a complete transition table by following failure
+   * links breadth-first, merging the outputs of each state's failure state.
+   * The progress on each sequence comes from the failure states too: it's
+   * the depth of the deepest state along the failure chain which is a
+   * prefix of the sequence.
+   */
+  private void buildTransitions() {
+    int width = symbolCount + 1;
+    int[] fail = new int[stateCount];
+    ArrayDeque<Integer> queue = new ArrayDeque<>(stateCount);
+    progress = new int[stateCount * sequenceCount];
+
+    for (int symbol=0; symbol<width; symbol++) {
+      int next = transitions[symbol];
+      if (next == -1) {
+        transitions[symbol] = ROOT;
+      } else {
+        fail[next] = ROOT;
+        queue.add(next);
+      }
+    }
+
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      output[state] |= output[fail[state]];
+      for (int seq=0; seq<sequenceCount; seq++) {
+        progress[state * sequenceCount + seq] = (prefixOf[state] & 1 << seq) != 0
+            ? depth[state]
+            : progress[fail[state] * sequenceCount + seq];
+      }
+      for (int symbol=0; symbol<width; symbol++) {
+        int index = state * width + symbol;
+        int next = transitions[index];
+        int fallback = transitions[fail[state] * width + symbol];
+        if (next == -1) {
+          transitions[index] = fallback;
+        } else {
+          fail[next] = fallback;
+          queue.add(next);
+        }
+      }
+    }
+  }
+
+  public int getSequenceCount() {
+    return sequenceCount;
+  }
+
+  public int getSequenceLength(int sequence) {
+    return sequenceLengths[sequence];
+  }
+
+  public int getStateCount() {
+    return stateCount;
+  }
+
+  /**
+   * Get the symbol used by {@link #next(int, int)} for a cell value. Values
+   * which aren't in any sequence all share one symbol.
+   */
+  public int symbolOf(int value) {
+    int symbol = indexOf(alphabet, value);
+    return symbol == -1 ? symbolCount : symbol;
+  }
+
+  public int next(int state, int symbol) {
+    return transitions[state * (symbolCount + 1) + symbol];
+  }
+
+  /**
+   * Get the sequences which are completed upon entering this state
+   */
+  public int getOutput(int state) {
+    return output[state];
+  }
+
+  /**
+   * Get the length of the longest sequence prefix matched in this state
+   */
+  public int getDepth(int state) {
+    return depth[state];
+  }
+
+  /**
+   * Get how many values of a sequence are already matched in this state,
+   * i.e. the length of the longest prefix of the sequence the path ends with
+   */
+  public int getProgress(int state, int sequence) {
+    return progress[state * sequenceCount + sequence];
+  }
+
+  public int allSequences() {
+    return sequenceCount == 0 ? 0 : -1 >>> (Integer.SIZE - sequenceCount);
+  }
+
+  /**
+   * Rank a set of completed sequences the same way {@link SequencePermutator}
+   * orders them: sets containing a higher priority sequence first, then
+   * larger sets, then lexicographically. A higher score is better, and adding
+   * a sequence to a set never lowers its score.
+   */
+  public static long priorityScore(int completed, int sequenceCount) {
+    if (completed == 0)
+      return 0;
+    long first = Integer.numberOfTrailingZeros(completed);
+    long size = Integer.bitCount(completed);
+    long lexical = Integer.reverse(completed) >>> (Integer.SIZE - sequenceCount);
+    return (sequenceCount - first) << 40 | size << 32 | lexical;
+  }
+
+}
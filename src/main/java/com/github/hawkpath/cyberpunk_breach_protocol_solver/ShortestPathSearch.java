@@ -0,0 +1,252 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the shortest path which completes a given set of sequences, in any
+ * order, by iterative deepening. Used to shorten a solution which wastes
+ * buffer on bridges it didn't need.
+ *
+ * Like {@link AutomatonSearch}, a {@link SequenceAutomaton} tracks which
+ * sequences the path has completed. A branch is cut off once it can't
+ * complete the rest within the length limit, judging by the longest
+ * sequence left and by bounds learned in earlier iterations. Whenever a
+ * state fails, the least number of steps any of its moves needed is stored
+ * in a {@link TranspositionTable}. That bound doesn't depend on the length
+ * limit, so every iteration starts with everything the ones before learned,
+ * and the limit can skip lengths which are known to be too short.
+ *
+ * Like {@link AutomatonSearch}, the path can be made to start with cells
+ * already picked into the buffer.
+ */
+class ShortestPathSearch {
+
+  private static final int FOUND = -1;
+  private static final int UNBOUNDED = Integer.MAX_VALUE / 2;
+  // States this close to the length limit are cheaper to search again
+  private static final int MIN_MEMOIZED_DEPTH = 4;
+
+  private final OCRArray2D matrix;
+  private final SequenceAutomaton automaton;
+  private final TranspositionTable table;
+  private final int width;
+  private final int height;
+  private final int[] symbols;
+
+  private int target;
+  // Cells already in the buffer
+  private int[] prefix = new int[0];
+  private int[] path;
+  private int pathLength = 0;
+  private Incumbent incumbent = null;
+  private boolean aborted = false;
+  private final SolverMetrics metrics = Metrics.ENABLED ? new SolverMetrics() : null;
+
+  public ShortestPathSearch(
+      OCRArray2D matrix, List<? extends List<OCRArrayNode>> sequences, TranspositionTable table
+  ) {
+    if (!supports(matrix, sequences))
+      throw new IllegalArgumentException("matrix must be a grid of at most 64 cells");
+    this.matrix = matrix;
+    this.automaton = new SequenceAutomaton(sequences);
+    this.table = table;
+    this.width = matrix.getWidth();
+    this.height = matrix.getHeight();
+
+    symbols = new int[width * height];
+    for (int y=0; y<height; y++) {
+      for (int x=0; x<width; x++) {
+        symbols[y * width + x] = automaton.symbolOf(matrix.get(x, y).value);
+      }
+    }
+  }
+
+  public static boolean supports(OCRArray2D matrix, List<? extends List<OCRArrayNode>> sequences) {
+    return AutomatonSearch.supports(matrix, sequences);
+  }
+
+  /**
+   * Stop searching once the incumbent's deadline passes
+   */
+  public void setIncumbent(Incumbent incumbent) {
+    this.incumbent = incumbent;
+  }
+
+  /**
+   * Start from cells already picked into the buffer, in order. They must
+   * follow the row/column rules, which is up to the caller to check.
+   */
+  public void setPrefix(List<OCRArrayNode> cells) {
+    prefix = new int[cells.size()];
+    for (int i=0; i<prefix.length; i++) {
+      prefix[i] = cells.get(i).y * width + cells.get(i).x;
+    }
+  }
+
+  /**
+   * Get the sequences a path completes, as a bitmask where bit 0 is the
+   * sequence with the highest priority
+   */
+  public int completedBy(List<OCRArrayNode> path) {
+    int state = SequenceAutomaton.ROOT;
+    int completed = automaton.getOutput(state);
+    for (OCRArrayNode node : path) {
+      state = automaton.next(state, automaton.symbolOf(node.value));
+      completed |= automaton.getOutput(state);
+    }
+    return completed;
+  }
+
+  /**
+   * Search for the shortest path completing at least the `target` sequences
+   * @param maxLength the longest path to look for, including the prefix
+   * @return true if a path was found, in which case it is available through
+   *         {@link #getPath()}
+   */
+  public boolean search(int target, int maxLength) {
+    this.target = target;
+    aborted = false;
+    if (prefix.length > maxLength)
+      return false;
+    path = new int[Math.max(maxLength, 0)];
+    pathLength = prefix.length;
+    table.clear();
+
+    int state = SequenceAutomaton.ROOT;
+    int completed = automaton.getOutput(state);
+    int lastCell = 0;
+    long used = 0L;
+    for (int i=0; i<prefix.length; i++) {
+      lastCell = prefix[i];
+      state = automaton.next(state, symbols[lastCell]);
+      completed |= automaton.getOutput(state);
+      used |= 1L << lastCell;
+      path[i] = lastCell;
+    }
+    if ((completed & target) == target)
+      return true;
+
+    int limit = prefix.length + estimate(state, completed);
+    while (limit <= maxLength) {
+      int bound = search(prefix.length, limit, lastCell, state, completed, used);
+      if (bound == FOUND)
+        return true;
+      if (aborted)
+        return false;
+      // No path is shorter than the bound, so lengths below it can be skipped
+      limit = Math.max(prefix.length + bound, limit + 1);
+    }
+    return false;
+  }
+
+  /**
+   * @return counters of the search, or null if {@link Metrics} are disabled
+   */
+  public SolverMetrics getMetrics() {
+    return metrics;
+  }
+
+  public ArrayList<OCRArrayNode> getPath() {
+    ArrayList<OCRArrayNode> nodes = new ArrayList<>(pathLength);
+    for (int i=0; i<pathLength; i++) {
+      nodes.add(matrix.get(path[i] % width, path[i] / width));
+    }
+    return nodes;
+  }
+
+  /**
+   * Get a lower bound on the number of steps needed to complete the target
+   * sequences from this state
+   */
+  private int estimate(int state, int completed) {
+    int estimate = 0;
+    int depth = automaton.getDepth(state);
+    for (int left = target & ~completed; left != 0; left &= left - 1) {
+      int seq = Integer.numberOfTrailingZeros(left);
+      // The longest prefix matched bounds the progress on every sequence
+      estimate = Math.max(estimate, Math.max(automaton.getSequenceLength(seq) - depth, 1));
+    }
+    return estimate;
+  }
+
+  private static long packState(int state, int completed, int lastCell) {
+    return (long) completed << 22 | (long) state << 6 | lastCell;
+  }
+
+  /**
+   * @return {@link #FOUND} if the target was completed within the limit,
+   *         otherwise a lower bound on the steps needed from this state
+   */
+  private int search(
+      int bufferIndex, int limit, int lastCell, int state, int completed, long used
+  ) {
+    if (incumbent != null && incumbent.checkExpired())
+      aborted = true;
+    if (aborted)
+      return UNBOUNDED;
+    if (Metrics.ENABLED)
+      metrics.nodes++;
+
+    // Every cell of the path is used, so `used` also tells the buffer index
+    // and whether we're in a row or a column
+    int remaining = limit - bufferIndex;
+    int bound = estimate(state, completed);
+    if (bound > remaining) {
+      if (Metrics.ENABLED)
+        metrics.boundPrunes++;
+      return bound;
+    }
+    long packed = 0;
+    boolean memoize = remaining >= MIN_MEMOIZED_DEPTH;
+    if (memoize) {
+      packed = packState(state, completed, lastCell);
+      bound = Math.max(bound, table.getDepth(used, packed));
+      if (bound > remaining) {
+        if (Metrics.ENABLED)
+          metrics.boundPrunes++;
+        return bound;
+      }
+    }
+
+    int first, step, count;
+    if ((bufferIndex & 1) == 0) {
+      first = lastCell - lastCell % width;
+      step = 1;
+      count = width;
+    } else {
+      first = lastCell % width;
+      step = width;
+      count = height;
+    }
+
+    int best = UNBOUNDED;
+    for (int i=0, cell=first; i<count; i++, cell+=step) {
+      if ((used & (1L << cell)) != 0) {
+        if (Metrics.ENABLED)
+          metrics.containsRejections++;
+        continue;
+      }
+
+      int nextState = automaton.next(state, symbols[cell]);
+      int nextCompleted = completed | automaton.getOutput(nextState);
+      path[bufferIndex] = cell;
+      if ((nextCompleted & target) == target) {
+        pathLength = bufferIndex + 1;
+        return FOUND;
+      }
+
+      int childBound = search(
+          bufferIndex + 1, limit, cell, nextState, nextCompleted, used | (1L << cell)
+      );
+      if (childBound == FOUND)
+        return FOUND;
+      best = Math.min(best, childBound + 1);
+    }
+
+    if (memoize && !aborted)
+      table.store(used, packed, best);
+    return best;
+  }
+
+}
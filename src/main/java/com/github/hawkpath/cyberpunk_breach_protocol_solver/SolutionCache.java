@@ -0,0 +1,229 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Least recently used cache of solutions, keyed by a fingerprint of the
+ * puzzle (see {@link #fingerprint}). Paths are stored as cell positions and
+ * turned back into nodes of the matrix being solved on a hit.
+ *
+ * The cache can be backed by a memory-mapped file so it survives restarts.
+ * The file is a small header followed by one fixed size slot per entry; a
+ * solution is written to the slot its fingerprint hashes to, so the file
+ * never grows, and every occupied slot is loaded back on startup.
+ */
+public class SolutionCache {
+
+  final static Logger logger = LoggerFactory.getLogger(SolutionCache.class.getName());
+
+  private static final int FILE_MAGIC = 0x42505343;  // "BPSC"
+  private static final int FILE_VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  // Paths are stored as one byte each for x and y
+  private static final int MAX_PATH_LENGTH = 31;
+  private static final int SLOT_SIZE = Long.BYTES + 1 + 2 * MAX_PATH_LENGTH + 1;
+
+  private final int capacity;
+  private final LinkedHashMap<Long, byte[]> entries;
+  private RandomAccessFile file = null;
+  private MappedByteBuffer mapped = null;
+
+  private long hits = 0;
+  private long misses = 0;
+
+  public SolutionCache(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive");
+    this.capacity = capacity;
+    entries = new LinkedHashMap<Long, byte[]>(capacity * 4 / 3 + 1, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+        return size() > SolutionCache.this.capacity;
+      }
+    };
+  }
+
+  /**
+   * Create a cache persisted to a file, loading any solutions already in it.
+   * If the file can't be used, the cache only lives in memory.
+   */
+  public SolutionCache(int capacity, File path) {
+    this(capacity);
+    try {
+      open(path);
+    } catch (IOException e) {
+      logger.warn("Failed to open solution cache file, it won't be persisted", e);
+      close();
+    }
+  }
+
+  private void open(File path) throws IOException {
+    long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+    if (size > Integer.MAX_VALUE)
+      throw new IOException("capacity is too large for a cache file");
+    boolean existed = path.exists() && path.length() == size;
+    file = new RandomAccessFile(path, "rw");
+    file.setLength(size);
+    mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+    if (existed && mapped.getInt(0) == FILE_MAGIC && mapped.getInt(4) == FILE_VERSION
+        && mapped.getInt(8) == capacity && mapped.getInt(12) == SLOT_SIZE) {
+      load();
+      return;
+    }
+
+    // New file, or one written with a different layout; start over
+    for (long i=HEADER_SIZE; i<size; i+=SLOT_SIZE) {
+      mapped.putLong((int) i, 0L);
+    }
+    mapped.putInt(0, FILE_MAGIC);
+    mapped.putInt(4, FILE_VERSION);
+    mapped.putInt(8, capacity);
+    mapped.putInt(12, SLOT_SIZE);
+  }
+
+  private void load() {
+    for (int slot=0; slot<capacity; slot++) {
+      int offset = HEADER_SIZE + slot * SLOT_SIZE;
+      long key = mapped.getLong(offset);
+      int length = mapped.get(offset + Long.BYTES) & 0xFF;
+      if (key == 0 || length > MAX_PATH_LENGTH)
+        continue;
+      byte[] path = new byte[2 * length];
+      for (int i=0; i<path.length; i++) {
+        path[i] = mapped.get(offset + Long.BYTES + 1 + i);
+      }
+      entries.put(key, path);
+    }
+    logger.debug("Loaded {} cached solutions", entries.size());
+  }
+
+  /**
+   * Flush the cache file to disk and stop persisting
+   */
+  public synchronized void close() {
+    if (mapped != null)
+      mapped.force();
+    mapped = null;
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        logger.warn("Failed to close solution cache file", e);
+      }
+      file = null;
+    }
+  }
+
+  /**
+   * Hash everything which determines the solution of a puzzle
+   */
+  public static long fingerprint(
+      OCRArray2D matrix, OCRArray2D sequences, int bufferSize, Solver.Engine engine,
+      boolean shortestPath, long[] rewards
+  ) {
+    long hash = 0xCBF29CE484222325L;
+    hash = mix(hash, bufferSize);
+    hash = mix(hash, engine.ordinal());
+    hash = mix(hash, shortestPath ? 1 : 0);
+    hash = mix(hash, rewards == null ? -1 : rewards.length);
+    if (rewards != null) {
+      for (long reward : rewards) {
+        hash = mix(hash, (int) reward);
+        hash = mix(hash, (int) (reward >>> 32));
+      }
+    }
+    for (OCRArray2D array : new OCRArray2D[] {matrix, sequences}) {
+      hash = mix(hash, array.getHeight());
+      for (List<OCRArrayNode> row : array) {
+        hash = mix(hash, row.size());
+        for (OCRArrayNode node : row) {
+          hash = mix(hash, node.value);
+        }
+      }
+    }
+    // 0 marks an empty slot in the cache file
+    return hash == 0 ? 1 : hash;
+  }
+
+  private static long mix(long hash, int value) {
+    hash = (hash ^ value) * 0x100000001B3L;
+    return hash ^ (hash >>> 29);
+  }
+
+  /**
+   * Get a cached solution for the puzzle with this fingerprint
+   * @return the solution, as nodes of `matrix`, or null if there is none
+   */
+  public synchronized ArrayList<OCRArrayNode> get(long fingerprint, OCRArray2D matrix) {
+    byte[] path = entries.get(fingerprint);
+    if (path == null) {
+      misses++;
+      return null;
+    }
+
+    ArrayList<OCRArrayNode> solution = new ArrayList<>(path.length / 2);
+    for (int i=0; i<path.length; i+=2) {
+      int x = path[i];
+      int y = path[i + 1];
+      if (y >= matrix.getHeight() || x >= matrix.getRow(y).size()) {
+        // Doesn't fit this matrix, so the fingerprint must have collided
+        misses++;
+        return null;
+      }
+      solution.add(matrix.get(x, y));
+    }
+    hits++;
+    return solution;
+  }
+
+  public synchronized void put(long fingerprint, List<OCRArrayNode> solution) {
+    if (solution.size() > MAX_PATH_LENGTH)
+      return;
+    byte[] path = new byte[2 * solution.size()];
+    for (int i=0; i<solution.size(); i++) {
+      OCRArrayNode node = solution.get(i);
+      if (node.x > Byte.MAX_VALUE || node.y > Byte.MAX_VALUE)
+        return;
+      path[2 * i] = (byte) node.x;
+      path[2 * i + 1] = (byte) node.y;
+    }
+    entries.put(fingerprint, path);
+
+    if (mapped != null) {
+      int slot = (int) Long.remainderUnsigned(fingerprint, capacity);
+      int offset = HEADER_SIZE + slot * SLOT_SIZE;
+      // Write the key last, so a slot is never left with half a path
+      mapped.putLong(offset, 0L);
+      mapped.put(offset + Long.BYTES, (byte) solution.size());
+      for (int i=0; i<path.length; i++) {
+        mapped.put(offset + Long.BYTES + 1 + i, path[i]);
+      }
+      mapped.putLong(offset, fingerprint);
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+}
@@ -1,12 +1,55 @@
 package com.github.hawkpath.cyberpunk_breach_protocol_solver;
 
-import com.github.dakusui.combinatoradix.Combinator;
-import com.github.dakusui.combinatoradix.Permutator;
-import static com.github.dakusui.combinatoradix.Utils.nCk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An ordered selection of sequences, as a view over the sequences owned by a
+ * {@link SequencePermutator}
+ */
+class SequencePermutation extends AbstractList<List<OCRArrayNode>> {
+
+  private final List<List<OCRArrayNode>> sequences;
+  private final int[][] overlaps;
+  private final int[] order;
+
+  SequencePermutation(List<List<OCRArrayNode>> sequences, int[][] overlaps, int[] order) {
+    this.sequences = sequences;
+    this.overlaps = overlaps;
+    this.order = order;
+  }
+
+  @Override
+  public List<OCRArrayNode> get(int index) {
+    return sequences.get(order[index]);
+  }
+
+  @Override
+  public int size() {
+    return order.length;
+  }
+
+  /**
+   * Get the index of the sequence at this position, where 0 is the sequence
+   * with the highest priority
+   */
+  public int sequenceIndex(int index) {
+    return order[index];
+  }
+
+  /**
+   * Get how many values of the sequence at this position are already found
+   * at the end of the sequence before it
+   */
+  public int overlap(int index) {
+    return index == 0 ? 0 : overlaps[order[index - 1]][order[index]];
+  }
+}
 
-class SequencePermutator implements Iterable<List<List<OCRArrayNode>>> {
+class SequencePermutator implements Iterable<SequencePermutation> {
   /*
    * We're assuming that the sequences are ordered in ascending priority
    *
@@ -26,12 +69,23 @@ class SequencePermutator implements Iterable<List<List<OCRArrayNode>>> {
    * 34
    * 3
    * 4
+   *
+   * Permutations are generated lazily, so only the current combination and
+   * permutation are held in memory no matter how many there are in total.
+   *
+   * Permutations which can't fit in the buffer even with every sequence
+   * overlapping the one before it as much as possible are skipped.
    */
 
   private List<List<OCRArrayNode>> sequences;
   private int maxBufferSize;
-  private List<List<List<OCRArrayNode>>> permutations;
+  // overlaps[i][j] is the overlap of sequence j when it follows sequence i
+  private int[][] overlaps;
 
+  /**
+   * @param maxBufferSize the buffer size permutations must fit in, or -1 to
+   *                      get every permutation
+   */
   public SequencePermutator(OCRArray2D sequences, int maxBufferSize) {
     int seqCount = sequences.getHeight();
     this.sequences = new ArrayList<>(seqCount);
@@ -39,73 +93,254 @@ class SequencePermutator implements Iterable<List<List<OCRArrayNode>>> {
       this.sequences.add(sequences.getRow(y));
     }
     this.maxBufferSize = maxBufferSize;
-    generatePermutations();
-  }
 
-  @Override
-  public Iterator<List<List<OCRArrayNode>>> iterator() {
-    return permutations.iterator();
+    overlaps = new int[seqCount][seqCount];
+    for (int i=0; i<seqCount; i++) {
+      for (int j=0; j<seqCount; j++) {
+        overlaps[i][j] = overlapSize(this.sequences.get(i), this.sequences.get(j));
+      }
+    }
   }
 
-  private static int totalLength(List<List<Integer>> list) {
-    int total = 0;
-    for (List<Integer> row : list) {
-      total += row.size();
+  static int overlapSize(List<OCRArrayNode> seq1, List<OCRArrayNode> seq2) {
+    int overlap = 0;
+    for (OCRArrayNode value : seq1) {
+      if (overlap == seq2.size())
+        // We have another value in seq1 but we're at the end of seq2; try again!
+        overlap = 0;
+      if (value.equals(seq2.get(overlap))) {
+        // Overlap is occurring
+        overlap++;
+      } else if (value.equals(seq2.get(0))) {
+        // Reset overlap but we're already starting another overlap
+        overlap = 1;
+      } else {
+        // Reset overlap
+        overlap = 0;
+      }
     }
-    return total;
+    return overlap;
   }
 
-  private static long rowsWithItemInFirstPosition(long total, long select, long index) {
-    try {
-      return nCk(total - index - 1, select - 1);
-    } catch (ArithmeticException e) {
-      return 0;
-    }
+  /**
+   * Get the sequences in descending priority
+   */
+  public List<List<OCRArrayNode>> getSequences() {
+    return sequences;
   }
 
-  private void generatePermutations() {
-    int total = sequences.size();
-    Combinator<List<OCRArrayNode>> combinator;
-    Permutator<List<OCRArrayNode>> permutator;
-    List<List<List<OCRArrayNode>>> permutations = new ArrayList<>();
-    int[] startPositions = new int[total];
+  @Override
+  public Iterator<SequencePermutation> iterator() {
+    return new PermutationIterator();
+  }
 
-    for (int element=0; element<total; element++) {
-      // Iterate through each element in the list. We want to get all combinations
-      // with this element in the first position, then the next element, etc.
+  private class PermutationIterator implements Iterator<SequencePermutation> {
+
+    private final int total = sequences.size();
+    // Indices of the sequences in the current combination, ascending
+    private final int[] combination = new int[total];
+    // Positions within `combination` in the order of the current permutation
+    private final int[] permutation = new int[total];
+    // The sequence that must be in the first position of the combination
+    private int element = 0;
+    private int select = total;
+    // Whether combination/permutation hold a permutation we haven't looked at
+    private boolean positioned;
+    private SequencePermutation next;
+
+    PermutationIterator() {
+      positioned = total > 0 && (startCombination() || nextSelect() || nextElement());
+      next = findNext();
+    }
 
-      for (int select=total; select>=1; select--) {
-        // Iterate from largest combinations to smallest
-        combinator = new Combinator<>(sequences, select);
-        // Get the index where this element first shows up as the first element,
-        // get the number of times it appears in the first position, and add
-        // this number of times to the start index for the next element with this
-        // value of `select`.
-        long startPos = startPositions[select-1];
-        long elementCount = rowsWithItemInFirstPosition(total, select, element);
-        startPositions[select-1] += elementCount;
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
 
-        for (long i=startPos; i<startPos+elementCount; i++) {
-          // Iterate through each combination with this element in the first position
-          permutator = new Permutator<>(combinator.get(i), select);
+    @Override
+    public SequencePermutation next() {
+      if (next == null)
+        throw new NoSuchElementException();
+      SequencePermutation current = next;
+      next = findNext();
+      return current;
+    }
 
-          for (List<List<OCRArrayNode>> permutation : permutator) {
-            // Iterate through each permutation of this combination
-            permutations.add(permutation);
+    /**
+     * Get the next permutation which fits in the buffer
+     */
+    private SequencePermutation findNext() {
+      while (positioned) {
+        SequencePermutation current = null;
+        if (maxBufferSize < 0 || mergedLength() <= maxBufferSize) {
+          int[] order = new int[select];
+          for (int i=0; i<select; i++) {
+            order[i] = combination[permutation[i]];
           }
+          current = new SequencePermutation(sequences, overlaps, order);
         }
+
+        positioned = nextPermutation() || nextCombination() || nextSelect() || nextElement();
+        if (current != null)
+          return current;
+      }
+      return null;
+    }
+
+    /**
+     * Get the shortest buffer the current permutation could be found in
+     */
+    private int mergedLength() {
+      int previous = combination[permutation[0]];
+      int length = sequences.get(previous).size();
+      for (int i=1; i<select; i++) {
+        int seq = combination[permutation[i]];
+        length += sequences.get(seq).size() - overlaps[previous][seq];
+        previous = seq;
+      }
+      return length;
+    }
+
+    /**
+     * Start the first combination of size `select` with `element` in the first
+     * position, if there is one
+     */
+    private boolean startCombination() {
+      if (element + select > total)
+        return false;
+      for (int i=0; i<select; i++) {
+        combination[i] = element + i;
+        permutation[i] = i;
       }
+      return true;
+    }
+
+    /**
+     * Advance to the next combination (in lexicographic order) which still has
+     * `element` in the first position
+     */
+    private boolean nextCombination() {
+      int i = select - 1;
+      while (i > 0 && combination[i] == total - select + i)
+        i--;
+      if (i == 0)
+        return false;
+
+      combination[i]++;
+      for (int j=i+1; j<select; j++) {
+        combination[j] = combination[j - 1] + 1;
+      }
+      for (int j=0; j<select; j++) {
+        permutation[j] = j;
+      }
+      return true;
+    }
+
+    /**
+     * Advance to the next permutation of the current combination, in
+     * lexicographic order
+     */
+    private boolean nextPermutation() {
+      int i = select - 2;
+      while (i >= 0 && permutation[i] > permutation[i + 1])
+        i--;
+      if (i < 0)
+        return false;
+
+      int j = select - 1;
+      while (permutation[j] < permutation[i])
+        j--;
+      swap(i, j);
+      for (int lo=i+1, hi=select-1; lo<hi; lo++, hi--) {
+        swap(lo, hi);
+      }
+      return true;
+    }
+
+    /**
+     * Move on to smaller combinations with the same first element
+     */
+    private boolean nextSelect() {
+      while (--select >= 1) {
+        if (startCombination())
+          return true;
+      }
+      return false;
+    }
+
+    /**
+     * Move on to combinations starting with the next element
+     */
+    private boolean nextElement() {
+      while (++element < total) {
+        select = total;
+        if (startCombination() || nextSelect())
+          return true;
+      }
+      return false;
+    }
+
+    private void swap(int i, int j) {
+      int tmp = permutation[i];
+      permutation[i] = permutation[j];
+      permutation[j] = tmp;
     }
-    this.permutations = permutations;
   }
 }
 
 public class Solver {
 
+  final static Logger logger = LoggerFactory.getLogger(Solver.class.getName());
+
+  /**
+   * Search implementations which can be used to solve a puzzle
+   */
+  public enum Engine {
+    /**
+     * Depth-first search over any size of grid, with an explicit stack (see
+     * {@link IterativeSearch}). The engine others fall back to.
+     */
+    RECURSIVE,
+    /** Allocation-free search using bitmasks (see {@link BitmaskSearch}) */
+    BITMASK,
+    /**
+     * Single search for all sequences at once, rather than one per permutation
+     * (see {@link AutomatonSearch}). The only engine which understands
+     * sequence rewards.
+     */
+    AUTOMATON,
+    /**
+     * {@link #BITMASK} search which remembers states that failed, so they
+     * aren't searched again when reached through a different path
+     */
+    MEMOIZED
+  }
+
+  private Engine engine = Engine.RECURSIVE;
+  private TranspositionTable transpositionTable = null;
+  private int transpositionTableSize = TranspositionTable.DEFAULT_CAPACITY;
+  private int parallelism = 1;
+  private ForkJoinPool pool = null;
   private OCRArray2D matrix = null;
+  private OCRArray2D sequences = null;
   private SequencePermutator sequencePermutator = null;
+  private SolutionCache solutionCache = null;
   private int bufferSize = -1;
+  private List<OCRArrayNode> buffer = Collections.emptyList();
+  private long timeLimit = 0;
+  private boolean shortestPath = false;
+  private long[] sequenceRewards = null;
+  // Rewards for the puzzle being solved, in descending priority
+  private long[] rewards = null;
+  private TranspositionTable shortestPathTable = null;
+  private Incumbent incumbent = null;
   private ArrayList<OCRArrayNode> solution = null;
+  private boolean partial = false;
+  // Last complete solution, and the fingerprint of the puzzle it solves
+  private ArrayList<OCRArrayNode> lastSolution = null;
+  private long lastFingerprint = 0;
+  private SolverMetrics metrics = null;
 
   public Solver() {}
 
@@ -113,148 +348,437 @@ public class Solver {
     setAll(detection);
   }
 
-  public void setAll(DetectionResult detection) {
+  /**
+   * Set the puzzle to solve. If the detection has cells already picked into
+   * the buffer, the solution carries on from them (see
+   * {@link #checkBuffer(OCRArray2D, int, List)}).
+   * @throws IllegalArgumentException if the buffer can't have been picked
+   *                                  from the matrix
+   */
+  public void setAll(DetectionResult detection) throws IllegalArgumentException {
+    List<OCRArrayNode> buffer = detection.buffer == null
+        ? Collections.<OCRArrayNode>emptyList()
+        : detection.buffer;
+    checkBuffer(detection.matrix, detection.bufferSize, buffer);
     this.matrix = detection.matrix;
-    this.sequencePermutator = new SequencePermutator(detection.sequences, bufferSize);
+    this.sequences = detection.sequences;
     this.bufferSize = detection.bufferSize;
+    this.buffer = buffer;
+    this.sequencePermutator = new SequencePermutator(detection.sequences, bufferSize);
     solution = null;
+    partial = false;
   }
 
+  /**
+   * Check that cells picked into the buffer follow the rules of the game:
+   * the first is in the top row, each one after is in the column (then row,
+   * and so on) of the one before, and no cell is picked twice.
+   * @throws IllegalArgumentException if they don't
+   */
+  static void checkBuffer(OCRArray2D matrix, int bufferSize, List<OCRArrayNode> buffer)
+      throws IllegalArgumentException {
+    if (buffer.size() > bufferSize)
+      throw new IllegalArgumentException("buffer has more cells than it can hold");
+    for (int i=0; i<buffer.size(); i++) {
+      OCRArrayNode node = buffer.get(i);
+      if (node.x < 0 || node.y < 0 || node.y >= matrix.getHeight()
+          || node.x >= matrix.getRow(node.y).size())
+        throw new IllegalArgumentException("buffer cell (" + node.x + ", " + node.y + ") is outside the matrix");
+      OCRArrayNode last = i == 0 ? matrix.get(0, 0) : buffer.get(i - 1);
+      if (i % 2 == 0 ? node.y != last.y : node.x != last.x)
+        throw new IllegalArgumentException("buffer cell (" + node.x + ", " + node.y + ") can't follow the one before");
+      for (int j=0; j<i; j++) {
+        if (buffer.get(j).x == node.x && buffer.get(j).y == node.y)
+          throw new IllegalArgumentException("buffer cell (" + node.x + ", " + node.y + ") is picked twice");
+      }
+    }
+  }
+
+  /**
+   * Get the path to pick, which starts with the cells already in the buffer
+   */
   public ArrayList<OCRArrayNode> getSolution() {
     return solution;
   }
 
+  /**
+   * @return true if the last solve ran out of time, in which case the
+   *         solution is the best one found before the deadline
+   */
+  public boolean isPartial() {
+    return partial;
+  }
+
+  public boolean isShortestPath() {
+    return shortestPath;
+  }
+
+  /**
+   * Set whether to shorten solutions to the fewest buffer cells which still
+   * complete the same sequences. Paths found by the search often use bridges
+   * they didn't need.
+   */
+  public void setShortestPath(boolean shortestPath) {
+    this.shortestPath = shortestPath;
+  }
+
+  /**
+   * Get what the last solve did
+   * @return the metrics, or null if {@link Metrics} are disabled
+   */
+  public SolverMetrics getMetrics() {
+    return metrics;
+  }
+
+  public long[] getSequenceRewards() {
+    return sequenceRewards;
+  }
+
+  /**
+   * Set how much completing each sequence is worth, in the order the
+   * sequences are shown (top to bottom), or null to favor higher priority
+   * sequences. The {@link Engine#AUTOMATON} engine then finds the path with
+   * the highest total reward. Ignored by other engines, and for puzzles with
+   * a different number of sequences.
+   */
+  public void setSequenceRewards(long[] sequenceRewards) {
+    if (sequenceRewards != null) {
+      for (long reward : sequenceRewards) {
+        if (reward < 0)
+          throw new IllegalArgumentException("rewards must not be negative");
+      }
+    }
+    this.sequenceRewards = sequenceRewards;
+  }
+
+  public long getTimeLimit() {
+    return timeLimit;
+  }
+
+  /**
+   * Set how long a solve may take in milliseconds, or 0 for no limit. When
+   * time runs out, the solution is the path completing the highest priority
+   * sequences found so far, which may be fewer than a complete search would
+   * find.
+   */
+  public void setTimeLimit(long timeLimit) {
+    if (timeLimit < 0)
+      throw new IllegalArgumentException("timeLimit must not be negative");
+    this.timeLimit = timeLimit;
+  }
+
+  public Engine getEngine() {
+    return engine;
+  }
+
+  public void setEngine(Engine engine) {
+    this.engine = engine;
+  }
+
+  /**
+   * Set a cache to look solutions up in before solving, and to store new
+   * solutions in. May be shared between solvers.
+   */
+  public void setSolutionCache(SolutionCache solutionCache) {
+    this.solutionCache = solutionCache;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Set the number of threads used by the {@link Engine#BITMASK} engine to
+   * search permutations concurrently, and by the {@link Engine#RECURSIVE}
+   * engine to split up the search of each permutation (see
+   * {@link WorkStealingSearch}). The solution is the same as with a single
+   * thread.
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be positive");
+    if (parallelism == this.parallelism)
+      return;
+    this.parallelism = parallelism;
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  /**
+   * Set the maximum number of states remembered by the {@link Engine#MEMOIZED}
+   * engine
+   */
+  public void setTranspositionTableSize(int size) {
+    if (size < 1)
+      throw new IllegalArgumentException("size must be positive");
+    transpositionTableSize = size;
+    transpositionTable = null;
+    shortestPathTable = null;
+  }
+
+  /**
+   * Get the table used by the {@link Engine#MEMOIZED} engine, for its hit
+   * rate etc. Statistics are reset on every solve.
+   * @return the table, or null if the engine hasn't been used yet
+   */
+  public TranspositionTable getTranspositionTable() {
+    return transpositionTable;
+  }
+
   public void solve() {
     if (matrix == null || sequencePermutator == null || bufferSize == -1)
       return;
-    solution = null;
-    ArrayDeque<OCRArrayNode> stack = new ArrayDeque<>(bufferSize);
+    if (!Metrics.ENABLED) {
+      solveCached();
+      return;
+    }
 
-    for (List<List<OCRArrayNode>> sequences : sequencePermutator) {
-      if (solveRecursive(stack, sequences)) {
-        solution = new ArrayList<>(stack);
-        break;
+    metrics = new SolverMetrics(engine);
+    long startTime = System.nanoTime();
+    solveCached();
+    metrics.durationNanos = System.nanoTime() - startTime;
+    metrics.solved = solution != null;
+    metrics.partial = partial;
+    logger.debug("{}", metrics);
+    Metrics.commit(metrics);
+  }
+
+  private void solveCached() {
+    solution = null;
+    partial = false;
+    rewards = engine == Engine.AUTOMATON ? rewardsByPriority() : null;
+
+    long fingerprint = SolutionCache.fingerprint(
+        matrix, sequences, bufferSize, engine, shortestPath, rewards
+    );
+    ArrayList<OCRArrayNode> previous = null;
+    if (solutionCache != null)
+      previous = solutionCache.get(fingerprint, matrix);
+    if ((previous == null || !startsWithBuffer(previous)) && !buffer.isEmpty()
+        && fingerprint == lastFingerprint)
+      previous = lastSolution;
+    // The best path is still the best one after picking some of it, so
+    // there's no need to search again
+    if (previous != null && startsWithBuffer(previous)) {
+      // Nodes of this matrix rather than the last one, for their bounding boxes
+      solution = new ArrayList<>(previous.size());
+      for (OCRArrayNode node : previous) {
+        solution.add(matrix.get(node.x, node.y));
       }
+      if (Metrics.ENABLED)
+        metrics.cacheHit = true;
+      return;
     }
+
+    search();
+    if (solution == null || partial)
+      // A complete search may find a better one next time
+      return;
+    lastSolution = solution;
+    lastFingerprint = fingerprint;
+    if (solutionCache != null && buffer.isEmpty())
+      solutionCache.put(fingerprint, solution);
   }
 
-  private static int overlapSize(List<? extends List<OCRArrayNode>> sequences, int secondSeqIndex) {
-    if (secondSeqIndex == 0)
-      return 0;
-    List<OCRArrayNode> seq1 = sequences.get(secondSeqIndex - 1);
-    List<OCRArrayNode> seq2 = sequences.get(secondSeqIndex);
+  private boolean startsWithBuffer(List<OCRArrayNode> path) {
+    if (path.size() < buffer.size())
+      return false;
+    for (int i=0; i<buffer.size(); i++) {
+      if (path.get(i).x != buffer.get(i).x || path.get(i).y != buffer.get(i).y)
+        return false;
+    }
+    return true;
+  }
 
-    int overlap = 0;
-    for (OCRArrayNode value : seq1) {
-      if (overlap == seq2.size())
-        // We have another value in seq1 but we're at the end of seq2; try again!
-        overlap = 0;
-      if (value.equals(seq2.get(overlap))) {
-        // Overlap is occurring
-        overlap++;
-      } else if (value.equals(seq2.get(0))) {
-        // Reset overlap but we're already starting another overlap
-        overlap = 1;
-      } else {
-        // Reset overlap
-        overlap = 0;
+  private void search() {
+    incumbent = timeLimit > 0
+        ? new Incumbent(timeLimit, sequencePermutator.getSequences().size())
+        : null;
+
+    searchEngine();
+    // Running out of time while shortening still leaves a full solution
+    boolean expired = incumbent != null && incumbent.isExpired();
+    if (shortestPath && solution != null && !expired)
+      shorten();
+
+    if (expired) {
+      logger.debug("Solver ran out of time after {} ms", timeLimit);
+      if (solution == null)
+        solution = incumbent.getPath();
+      partial = solution != null;
+    }
+    incumbent = null;
+  }
+
+  private void searchEngine() {
+    if (!buffer.isEmpty()) {
+      // Only the automaton can pick up sequences which are partly picked
+      if (AutomatonSearch.supports(matrix, sequencePermutator.getSequences()))
+        solveAutomaton();
+      else
+        logger.warn("Can't carry on from the buffer with a matrix over 64 cells");
+      return;
+    }
+
+    switch (engine) {
+      case BITMASK:
+        if (BitmaskSearch.supports(matrix)) {
+          if (parallelism > 1)
+            solveParallel();
+          else
+            solveBitmask();
+          return;
+        }
+        break;
+      case MEMOIZED:
+        if (BitmaskSearch.supports(matrix)) {
+          solveMemoized();
+          return;
+        }
+        break;
+      case AUTOMATON:
+        if (AutomatonSearch.supports(matrix, sequencePermutator.getSequences())) {
+          solveAutomaton();
+          return;
+        }
+        break;
+    }
+
+    if (IterativeSearch.supports(matrix)) {
+      if (parallelism > 1)
+        solveWorkStealing();
+      else
+        solveIterative();
+    }
+  }
+
+  private void solveIterative() {
+    IterativeSearch search = new IterativeSearch(matrix, bufferSize);
+    search.setIncumbent(incumbent);
+    for (SequencePermutation sequences : sequencePermutator) {
+      if (search.search(sequences)) {
+        solution = search.getPath();
+        break;
       }
+      if (search.getStatus() == IterativeSearch.Status.EXPIRED)
+        break;
     }
-    return overlap;
+    if (Metrics.ENABLED)
+      metrics.add(search.getMetrics());
   }
 
-  private boolean solveRecursive(Deque<OCRArrayNode> stack, List<? extends List<OCRArrayNode>> sequences) {
-    return solveRecursive(stack, sequences, 0, 0, 0, null);
+  private void solveWorkStealing() {
+    if (pool == null)
+      pool = new ForkJoinPool(parallelism);
+    WorkStealingSearch search = new WorkStealingSearch(pool);
+    for (SequencePermutation sequences : sequencePermutator) {
+      solution = search.search(matrix, bufferSize, sequences, incumbent);
+      if (solution != null || (incumbent != null && incumbent.isExpired()))
+        break;
+    }
+    if (Metrics.ENABLED)
+      metrics.add(search.getMetrics());
   }
 
-  private boolean solveRecursive(
-      Deque<OCRArrayNode> deque, List<? extends List<OCRArrayNode>> sequences,
-      int bufferIndex, int seqIndex, int seqValueIndex, OCRArrayNode lastNode
-  ) {
-    boolean solved;
-    int width = matrix.getWidth();
-    int height = matrix.getHeight();
-    boolean horizontal = bufferIndex % 2 == 0;
-    if (lastNode == null)
-      lastNode = new OCRArrayNode(0, 0, 0, null);
-    List<OCRArrayNode> seq = sequences.get(seqIndex);
-
-    while (seqValueIndex == seq.size()) {
-      // We're at the end of this sequence; move to the next.
-      // This is a loop because the next pattern may be a duplicate of
-      // the previous, meaning overlap will put seqValueIndex at the end of
-      // the sequence, and we don't want that
-      if (++seqIndex == sequences.size())
-        // We reached the end of the sequence and found everything.
-        // Collapse back up the call stack.
-        return true;
-      seq = sequences.get(seqIndex);
-      // If this sequence overlaps the previous sequence, skip the overlap
-      seqValueIndex = overlapSize(sequences, seqIndex);
-    }
-
-    if (seq.size() - seqValueIndex + bufferIndex > bufferSize)
-      // It's impossible to finish this sequence without overflowing the buffer
-      // we could determine this earlier and include bleeding but that would
-      // probably just be more complicated than necessary
-      return false;
+  private void solveBitmask() {
+    solveBitmask(new BitmaskSearch(matrix, bufferSize));
+  }
 
-    for (
-        OCRArrayNode node = horizontal
-            ? matrix.findInRow(lastNode.y, seq.get(seqValueIndex), 0)
-            : matrix.findInColumn(lastNode.x, seq.get(seqValueIndex), 0);
-        node != null;
-        node = horizontal
-            ? matrix.findInRow(lastNode.y, seq.get(seqValueIndex), node.x + 1)
-            : matrix.findInColumn(lastNode.x, seq.get(seqValueIndex), node.y + 1)
-    ) {
-      // Iterate through all instances of value in this row or col
-      if (deque.contains(node))
-        // Already used this node; skip!
-        continue;
-
-      deque.addLast(node);
-
-      solved = solveRecursive(
-          deque, sequences, bufferIndex + 1, seqIndex, seqValueIndex + 1, node
-      );
-      if (solved)
-        // We found the solution somewhere down the call stack; propagate the
-        // solution up and out
-        return true;
-      deque.removeLast();
-    }
-
-    if (seqValueIndex == 0 && bufferIndex + seq.size() < bufferSize) {
-      // We didn't find anything in this row/col, so just use its cells as a
-      // bridge to get to the right value.
-      // Do NOT increment seqValueIndex because we didn't actually find the
-      // value here
-      for (
-          OCRArrayNode node = horizontal
-              ? matrix.get(0, lastNode.y)
-              : matrix.get(lastNode.x, 0);
-          horizontal ? node.x < width - 1 : node.y < height - 1;
-          node = horizontal
-              ? matrix.get(node.x + 1, lastNode.y)
-              : matrix.get(lastNode.x, node.y + 1)
-      ) {
-        // Try every row/column to get to the next required value
-        if (bufferIndex != 0 && node == lastNode)
-          // Skip the node we just were on
-          continue;
-
-        deque.addLast(node);
-        solved = solveRecursive(
-            deque, sequences, bufferIndex + 1, seqIndex, seqValueIndex, node
-        );
-        if (solved)
-          return true;
-        deque.removeLast();
+  private void solveParallel() {
+    if (pool == null)
+      pool = new ForkJoinPool(parallelism);
+    ParallelPermutationSearch search = new ParallelPermutationSearch(pool);
+    solution = search.search(matrix, bufferSize, sequencePermutator, incumbent);
+    if (Metrics.ENABLED)
+      metrics.add(search.getMetrics());
+  }
+
+  private void solveMemoized() {
+    if (transpositionTable == null)
+      transpositionTable = new TranspositionTable(transpositionTableSize);
+    TranspositionTable table = transpositionTable;
+    table.resetStatistics();
+
+    solveBitmask(new BitmaskSearch(matrix, bufferSize, table));
+
+    logger.debug(
+        "Transposition table: {} lookups, {} hits ({}%), {} stores, {} evictions",
+        new Object[] {
+            table.getLookups(), table.getHits(),
+            String.format("%.1f", table.getHitRate() * 100),
+            table.getStores(), table.getEvictions()
+        }
+    );
+  }
+
+  private void solveBitmask(BitmaskSearch search) {
+    search.setIncumbent(incumbent);
+    for (SequencePermutation sequences : sequencePermutator) {
+      if (search.search(sequences)) {
+        solution = search.getPath();
+        break;
       }
+      if (search.isAborted())
+        break;
+    }
+    if (Metrics.ENABLED)
+      metrics.add(search.getMetrics());
+  }
+
+  /**
+   * Get the sequence rewards in descending priority, like
+   * {@link SequencePermutator#getSequences()}
+   * @return the rewards, or null if there are none for this puzzle
+   */
+  private long[] rewardsByPriority() {
+    if (sequenceRewards == null)
+      return null;
+    int count = sequences.getHeight();
+    if (sequenceRewards.length != count) {
+      logger.warn(
+          "Got {} sequence rewards for {} sequences, favoring higher priority sequences instead",
+          sequenceRewards.length, count
+      );
+      return null;
     }
+    long[] rewards = new long[count];
+    for (int i=0; i<count; i++) {
+      rewards[i] = sequenceRewards[count - 1 - i];
+    }
+    return rewards;
+  }
+
+  private void solveAutomaton() {
+    AutomatonSearch search = new AutomatonSearch(
+        matrix, sequencePermutator.getSequences(), bufferSize, rewards
+    );
+    search.setIncumbent(incumbent);
+    search.setPrefix(buffer);
+    if (search.search())
+      solution = search.getPath();
+    if (Metrics.ENABLED)
+      metrics.add(search.getMetrics());
+  }
 
-    return false;
+  private void shorten() {
+    List<List<OCRArrayNode>> sequences = sequencePermutator.getSequences();
+    if (!ShortestPathSearch.supports(matrix, sequences))
+      return;
+    if (shortestPathTable == null)
+      shortestPathTable = new TranspositionTable(transpositionTableSize);
+
+    ShortestPathSearch search = new ShortestPathSearch(matrix, sequences, shortestPathTable);
+    search.setIncumbent(incumbent);
+    search.setPrefix(buffer);
+    int completed = search.completedBy(solution);
+    if (completed != 0 && search.search(completed, solution.size() - 1)) {
+      logger.debug("Shortened solution from {} to {} cells", solution.size(), search.getPath().size());
+      solution = search.getPath();
+    }
+    if (Metrics.ENABLED)
+      metrics.add(search.getMetrics());
   }
 
   public void print() {
@@ -0,0 +1,107 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+/**
+ * What a single {@link Solver#solve()} did, to tell why one puzzle takes
+ * milliseconds and another seconds. Only collected when {@link Metrics} are
+ * enabled.
+ *
+ * Counters are summed over every search the solve ran, including every
+ * permutation and the shortest path search.
+ */
+public class SolverMetrics {
+
+  private final Solver.Engine engine;
+  long durationNanos = 0;
+  boolean solved = false;
+  boolean partial = false;
+  boolean cacheHit = false;
+
+  // Search nodes expanded
+  long nodes = 0;
+  // Moves through a cell only to get to the next row/column
+  long bridges = 0;
+  // Branches cut because the sequence couldn't fit in the buffer left
+  long overflowPrunes = 0;
+  // Branches cut because they couldn't beat the best path or length limit
+  long boundPrunes = 0;
+  // Cells skipped because the path already used them
+  long containsRejections = 0;
+  // Sequence permutations searched
+  long permutations = 0;
+
+  /**
+   * Create counters for a single search, to be added to a solve's metrics
+   */
+  SolverMetrics() {
+    this(null);
+  }
+
+  SolverMetrics(Solver.Engine engine) {
+    this.engine = engine;
+  }
+
+  synchronized void add(SolverMetrics other) {
+    nodes += other.nodes;
+    bridges += other.bridges;
+    overflowPrunes += other.overflowPrunes;
+    boundPrunes += other.boundPrunes;
+    containsRejections += other.containsRejections;
+    permutations += other.permutations;
+  }
+
+  public Solver.Engine getEngine() {
+    return engine;
+  }
+
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  public boolean isSolved() {
+    return solved;
+  }
+
+  public boolean isPartial() {
+    return partial;
+  }
+
+  public boolean isCacheHit() {
+    return cacheHit;
+  }
+
+  public long getNodes() {
+    return nodes;
+  }
+
+  public long getBridges() {
+    return bridges;
+  }
+
+  public long getOverflowPrunes() {
+    return overflowPrunes;
+  }
+
+  public long getBoundPrunes() {
+    return boundPrunes;
+  }
+
+  public long getContainsRejections() {
+    return containsRejections;
+  }
+
+  public long getPermutations() {
+    return permutations;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s solve in %.3f ms%s%s%s: %d nodes, %d bridges, %d overflow prunes, "
+            + "%d bound prunes, %d used cell rejections, %d permutations",
+        engine, durationNanos / 1e6,
+        solved ? "" : " (unsolved)", partial ? " (partial)" : "", cacheHit ? " (cached)" : "",
+        nodes, bridges, overflowPrunes, boundPrunes, containsRejections, permutations
+    );
+  }
+
+}
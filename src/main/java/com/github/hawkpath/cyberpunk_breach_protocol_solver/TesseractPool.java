@@ -0,0 +1,166 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.Tesseract;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed number of configured Tesseract handles, loaded and warmed up with a
+ * dummy recognition in the background as soon as the pool is created. A handle
+ * is borrowed for each OCR and released afterwards; borrowing waits while all
+ * of them are in use (or still loading). If Tesseract fails to load, e.g.
+ * because the native library is missing, borrowing throws instead of
+ * waiting for a handle that will never come.
+ */
+class TesseractPool {
+
+  final static Logger logger = LoggerFactory.getLogger(TesseractPool.class.getName());
+
+  private final File tessdata;
+  private final int size;
+  private final ArrayBlockingQueue<Handle> idle;
+  private volatile boolean closed = false;
+  // Handles loaded so far, and why loading the rest failed if it did
+  private volatile int loaded = 0;
+  private volatile Throwable loadFailure = null;
+
+  /**
+   * @param tessdata the folder with the traineddata files
+   * @param size the number of handles, i.e. how many OCRs can run at once
+   */
+  public TesseractPool(File tessdata, int size) {
+    if (size < 1)
+      throw new IllegalArgumentException("size must be positive");
+    this.tessdata = tessdata;
+    this.size = size;
+    idle = new ArrayBlockingQueue<>(size);
+
+    Thread warmUp = new Thread(this::warmUp, "tesseract-warmup");
+    warmUp.setDaemon(true);
+    warmUp.start();
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  private void warmUp() {
+    BufferedImage blank = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = blank.createGraphics();
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, blank.getWidth(), blank.getHeight());
+    g.dispose();
+
+    for (int i=0; i<size && !closed; i++) {
+      long time = System.nanoTime();
+      Handle handle = null;
+      try {
+        handle = createHandle();
+        handle.getWords(blank, ITessAPI.TessPageIteratorLevel.RIL_WORD);
+      } catch (RuntimeException | LinkageError e) {
+        // Any more handles would fail the same way
+        logger.error("Failed to load Tesseract", e);
+        if (handle != null)
+          handle.close();
+        loadFailure = e;
+        return;
+      }
+      logger.debug("Tesseract handle {} ready in {} ms", i, (System.nanoTime() - time) / 1_000_000);
+      loaded++;
+      release(handle);
+    }
+  }
+
+  private Handle createHandle() {
+    Handle tess = new Handle();
+    tess.setDatapath(tessdata.getAbsolutePath());
+
+    tess.setTessVariable("load_system_dawg", "false");
+    tess.setTessVariable("load_freq_dawg", "false");
+    tess.setTessVariable("tessedit_char_whitelist", " 1579ABCDEF");
+    tess.setTessVariable("user_defined_dpi", "300");
+    return tess;
+  }
+
+  /**
+   * Take a handle, waiting until one is free
+   * @throws InterruptedException if interrupted while waiting
+   * @throws IllegalStateException if the pool is closed, or Tesseract failed
+   *                               to load and there are no handles
+   */
+  public Tesseract borrow() throws InterruptedException {
+    while (true) {
+      if (closed)
+        throw new IllegalStateException("pool is closed");
+      Throwable failure = loadFailure;
+      if (failure != null && loaded == 0)
+        throw new IllegalStateException("Tesseract failed to load", failure);
+      // Wake up now and then, in case loading fails while waiting
+      Handle handle = idle.poll(100, TimeUnit.MILLISECONDS);
+      if (handle != null)
+        return handle;
+    }
+  }
+
+  /**
+   * Give back a handle taken with {@link #borrow()}
+   */
+  public void release(Tesseract tess) {
+    Handle handle = (Handle)tess;
+    if (closed || !idle.offer(handle))
+      handle.close();
+    else if (closed && idle.remove(handle))
+      // closed while we were giving it back
+      handle.close();
+  }
+
+  /**
+   * Free the handles. Handles still borrowed are freed when they're released.
+   */
+  public void close() {
+    closed = true;
+    ArrayList<Handle> handles = new ArrayList<>(size);
+    idle.drainTo(handles);
+    for (Handle handle : handles)
+      handle.close();
+  }
+
+  /**
+   * Tess4J loads the traineddata before, and frees it after, every
+   * recognition. This keeps it loaded until the handle is closed instead.
+   */
+  private static class Handle extends Tesseract {
+
+    private boolean initialized = false;
+
+    @Override
+    protected synchronized void init() {
+      if (!initialized) {
+        super.init();
+        initialized = true;
+      }
+    }
+
+    @Override
+    protected void dispose() {
+      // Kept loaded for the next recognition
+    }
+
+    synchronized void close() {
+      if (initialized) {
+        super.dispose();
+        initialized = false;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,138 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size hash table of search states which are known to lead nowhere.
+ * A state is a used-cell bitmask plus a packed long describing the rest of
+ * the search (see {@link BitmaskSearch}).
+ *
+ * The table is two-way set associative. The first slot of a bucket keeps the
+ * entry with the most search below it and the second slot always takes the
+ * newest entry, so memory use never grows past the capacity given up front
+ * while the most expensive failures stay remembered the longest.
+ * {@link #clear()} is O(1), which lets a table be reused for every
+ * permutation of every puzzle.
+ */
+class TranspositionTable {
+
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  private final int bucketMask;
+  private final long[] usedMasks;
+  private final long[] states;
+  private final int[] depths;
+  private final int[] generations;
+  private int generation = 1;
+
+  private long lookups = 0;
+  private long hits = 0;
+  private long stores = 0;
+  private long evictions = 0;
+
+  /**
+   * @param capacity maximum number of entries, rounded up to a power of two
+   */
+  public TranspositionTable(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    bucketMask = (size >> 1) - 1;
+    usedMasks = new long[size];
+    states = new long[size];
+    depths = new int[size];
+    generations = new int[size];
+  }
+
+  public int getCapacity() {
+    return usedMasks.length;
+  }
+
+  /**
+   * Forget every entry
+   */
+  public void clear() {
+    if (++generation == 0) {
+      // Wrapped around; stale entries could look current again
+      Arrays.fill(generations, 0);
+      generation = 1;
+    }
+  }
+
+  private int bucket(long used, long state) {
+    long hash = (used ^ (state * 0x9E3779B97F4A7C15L)) * 0xBF58476D1CE4E5B9L;
+    hash ^= hash >>> 29;
+    return ((int)(hash >>> 32) & bucketMask) << 1;
+  }
+
+  private boolean matches(int slot, long used, long state) {
+    return generations[slot] == generation && usedMasks[slot] == used && states[slot] == state;
+  }
+
+  public boolean contains(long used, long state) {
+    lookups++;
+    int slot = bucket(used, state);
+    if (matches(slot, used, state) || matches(slot + 1, used, state)) {
+      hits++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Get the depth a state was stored with
+   * @return the depth, or -1 if the state isn't in the table
+   */
+  public int getDepth(long used, long state) {
+    lookups++;
+    int slot = bucket(used, state);
+    if (!matches(slot, used, state) && !matches(++slot, used, state))
+      return -1;
+    hits++;
+    return depths[slot];
+  }
+
+  /**
+   * @param depth how much search the state stands for, e.g. the remaining
+   *              buffer size
+   */
+  public void store(long used, long state, int depth) {
+    stores++;
+    int slot = bucket(used, state);
+    if (generations[slot] == generation && depths[slot] > depth)
+      // Keep the deeper entry and replace the other one
+      slot++;
+    if (generations[slot] == generation)
+      evictions++;
+    usedMasks[slot] = used;
+    states[slot] = state;
+    depths[slot] = depth;
+    generations[slot] = generation;
+  }
+
+  public long getLookups() {
+    return lookups;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getStores() {
+    return stores;
+  }
+
+  public long getEvictions() {
+    return evictions;
+  }
+
+  public double getHitRate() {
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  public void resetStatistics() {
+    lookups = 0;
+    hits = 0;
+    stores = 0;
+    evictions = 0;
+  }
+
+}
@@ -0,0 +1,163 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Searches a single sequence permutation with several threads, by splitting
+ * an {@link IterativeSearch} whenever the pool runs out of work. Finds the
+ * same path as searching serially.
+ *
+ * Each task searches for a while, and if no other task is waiting to be
+ * stolen, gives away the untried part of its shallowest frame as a new
+ * task. Whatever a task has left comes before everything it gave away, and
+ * later splits come before earlier ones, so results are collected from the
+ * task itself first and then from its splits, newest first. A task which
+ * finds a path cancels its splits, since none of them can beat it.
+ *
+ * With {@link Metrics} on, each task counts into its own metrics and adds
+ * its splits' in once they've finished, so nothing is counted concurrently
+ * or after the search has returned.
+ */
+class WorkStealingSearch {
+
+  // Steps a task takes between checks for cancellation and idle threads
+  private static final long STEPS_PER_SLICE = 1 << 12;
+
+  private final ForkJoinPool pool;
+  private final SolverMetrics metrics = Metrics.ENABLED ? new SolverMetrics() : null;
+
+  public WorkStealingSearch(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * @return counters of every search so far, or null if {@link Metrics} are
+   *         disabled
+   */
+  public SolverMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Search for a path which completes all of the given sequences in order
+   * @param incumbent deadline of the search and keeper of its best partial
+   *                  path, or null to search until done
+   * @return the path, or null if there is none or the deadline passed
+   */
+  public ArrayList<OCRArrayNode> search(
+      OCRArray2D matrix, int bufferSize, SequencePermutation permutation,
+      Incumbent incumbent
+  ) {
+    // Most searches are over before they'd be worth handing to the pool
+    IterativeSearch search = new IterativeSearch(matrix, bufferSize);
+    search.setIncumbent(incumbent);
+    search.start(permutation);
+    IterativeSearch.Status status = search.run(STEPS_PER_SLICE);
+    if (Metrics.ENABLED)
+      metrics.add(search.getMetrics());
+    if (status == IterativeSearch.Status.FOUND)
+      return search.getPath();
+    if (status != IterativeSearch.Status.SUSPENDED)
+      return null;
+    SubtreeTask root = new SubtreeTask(matrix, bufferSize, search.snapshot(), incumbent, null);
+    try {
+      return pool.invoke(root);
+    } finally {
+      if (Metrics.ENABLED)
+        metrics.add(root.metrics);
+    }
+  }
+
+  private static class SubtreeTask extends RecursiveTask<ArrayList<OCRArrayNode>> {
+
+    private final OCRArray2D matrix;
+    private final int bufferSize;
+    private final IterativeSearch.Snapshot snapshot;
+    private final Incumbent incumbent;
+    // The task this one was split from
+    private final SubtreeTask parent;
+    // Counters of this task and its splits, complete once it's been joined
+    private final SolverMetrics metrics = Metrics.ENABLED ? new SolverMetrics() : null;
+    private volatile boolean cancelled = false;
+
+    SubtreeTask(
+        OCRArray2D matrix, int bufferSize, IterativeSearch.Snapshot snapshot,
+        Incumbent incumbent, SubtreeTask parent
+    ) {
+      this.matrix = matrix;
+      this.bufferSize = bufferSize;
+      this.snapshot = snapshot;
+      this.incumbent = incumbent;
+      this.parent = parent;
+    }
+
+    /**
+     * A task is cancelled along with the task it was split from
+     */
+    private boolean isCancelledTree() {
+      for (SubtreeTask task = this; task != null; task = task.parent) {
+        if (task.cancelled)
+          return true;
+      }
+      return false;
+    }
+
+    @Override
+    protected ArrayList<OCRArrayNode> compute() {
+      if (isCancelledTree())
+        return null;
+      IterativeSearch search = new IterativeSearch(matrix, bufferSize);
+      search.setIncumbent(incumbent);
+      search.restore(snapshot);
+      // Newest split first, which is also the order a serial search takes
+      ArrayDeque<SubtreeTask> splits = new ArrayDeque<>();
+      ArrayList<SubtreeTask> forked = new ArrayList<>();
+
+      try {
+        IterativeSearch.Status status;
+        while ((status = search.run(STEPS_PER_SLICE)) == IterativeSearch.Status.SUSPENDED) {
+          if (isCancelledTree())
+            return null;
+          if (getSurplusQueuedTaskCount() <= 0) {
+            IterativeSearch.Snapshot stolen = search.split();
+            if (stolen != null) {
+              SubtreeTask task = new SubtreeTask(
+                  matrix, bufferSize, stolen, incumbent, this
+              );
+              task.fork();
+              splits.push(task);
+              forked.add(task);
+            }
+          }
+        }
+        if (status == IterativeSearch.Status.FOUND)
+          return search.getPath();
+        if (status == IterativeSearch.Status.EXPIRED)
+          return null;
+
+        while (!splits.isEmpty()) {
+          ArrayList<OCRArrayNode> path = splits.pop().join();
+          if (path != null)
+            return path;
+        }
+        return null;
+      } finally {
+        for (SubtreeTask task : splits) {
+          task.cancelled = true;
+        }
+        if (Metrics.ENABLED) {
+          metrics.add(search.getMetrics());
+          // Cancelled splits stop within a slice
+          for (SubtreeTask task : forked) {
+            task.quietlyJoin();
+            metrics.add(task.metrics);
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Solves seeded random puzzles with every engine and checks they agree. The
+ * engines which search one sequence permutation at a time complete the same
+ * sequences, and the multithreaded searches find exactly the path of their
+ * serial counterparts. Splitting and restoring an {@link IterativeSearch} is
+ * checked to find the serial path too.
+ *
+ * The automaton searches every sequence at once, so it can also complete a
+ * sequence contained in another, which permutations can't be merged into.
+ * It's only checked not to do worse.
+ */
+public class EngineEquivalenceTest {
+
+  private static final long SEED = 2077;
+  private static final int PUZZLES = 300;
+
+  private interface PuzzleCheck {
+    void check(String name, DetectionResult puzzle);
+  }
+
+  private static void forEachPuzzle(PuzzleCheck check) {
+    PuzzleGenerator generator = new PuzzleGenerator(SEED);
+    for (int i=0; i<PUZZLES; i++) {
+      int size = 5 + i % 3;
+      int sequenceCount = 1 + i / 3 % 3;
+      int bufferSize = 4 + i / 9 % 5;
+      check.check(
+          String.format("puzzle %d (%dx%d, %d sequences, buffer %d)", i, size, size, sequenceCount, bufferSize),
+          generator.next(size, sequenceCount, bufferSize)
+      );
+    }
+  }
+
+  private static ArrayList<OCRArrayNode> solve(DetectionResult puzzle, Solver.Engine engine, int parallelism) {
+    Solver solver = new Solver();
+    solver.setEngine(engine);
+    solver.setParallelism(parallelism);
+    solver.setAll(puzzle);
+    solver.solve();
+    return solver.getSolution();
+  }
+
+  /**
+   * Get which sequences a path completes, as a bitmask by sequence index
+   */
+  private static int completed(OCRArray2D sequences, List<OCRArrayNode> path) {
+    if (path == null)
+      return 0;
+    int mask = 0;
+    for (int i=0; i<sequences.getHeight(); i++) {
+      List<OCRArrayNode> seq = sequences.getRow(i);
+      for (int start=0; start+seq.size()<=path.size(); start++) {
+        int j = 0;
+        while (j < seq.size() && path.get(start + j).value.equals(seq.get(j).value))
+          j++;
+        if (j == seq.size()) {
+          mask |= 1 << i;
+          break;
+        }
+      }
+    }
+    return mask;
+  }
+
+  private static List<String> cells(List<OCRArrayNode> path) {
+    if (path == null)
+      return null;
+    List<String> cells = new ArrayList<>(path.size());
+    for (OCRArrayNode node : path)
+      cells.add(node.x + "," + node.y);
+    return cells;
+  }
+
+  @Test
+  public void permutationEnginesCompleteTheSameSequences() {
+    forEachPuzzle((name, puzzle) -> {
+      int expected = completed(puzzle.sequences, solve(puzzle, Solver.Engine.RECURSIVE, 1));
+      for (Solver.Engine engine : new Solver.Engine[] {Solver.Engine.BITMASK, Solver.Engine.MEMOIZED}) {
+        assertEquals(
+            name + " with " + engine,
+            expected, completed(puzzle.sequences, solve(puzzle, engine, 1))
+        );
+      }
+    });
+  }
+
+  @Test
+  public void automatonDoesNoWorse() {
+    forEachPuzzle((name, puzzle) -> {
+      // Later sequences have priority, so comparing the masks as numbers
+      // compares what was completed by priority
+      int permutations = completed(puzzle.sequences, solve(puzzle, Solver.Engine.RECURSIVE, 1));
+      int automaton = completed(puzzle.sequences, solve(puzzle, Solver.Engine.AUTOMATON, 1));
+      assertTrue(
+          name + ": completed " + Integer.toBinaryString(automaton) + ", not "
+              + Integer.toBinaryString(permutations),
+          automaton >= permutations
+      );
+    });
+  }
+
+  @Test
+  public void parallelSearchesFindTheSerialPath() {
+    for (Solver.Engine engine : new Solver.Engine[] {Solver.Engine.RECURSIVE, Solver.Engine.BITMASK}) {
+      forEachPuzzle((name, puzzle) -> assertEquals(
+          name + " with " + engine,
+          cells(solve(puzzle, engine, 1)), cells(solve(puzzle, engine, 4))
+      ));
+    }
+  }
+
+  @Test
+  public void splitSearchesFindTheSerialPath() {
+    forEachPuzzle((name, puzzle) -> {
+      for (SequencePermutation permutation : new SequencePermutator(puzzle.sequences, puzzle.bufferSize)) {
+        IterativeSearch serial = new IterativeSearch(puzzle.matrix, puzzle.bufferSize);
+        List<String> expected = serial.search(permutation) ? cells(serial.getPath()) : null;
+        assertEquals(name, expected, searchSplitting(puzzle, permutation));
+      }
+    });
+  }
+
+  /**
+   * Search a permutation a few steps at a time, splitting off everything the
+   * search can give away after every slice, and searching the splits the way
+   * {@link WorkStealingSearch} collects them: the search itself first, then
+   * its splits newest first. Each split is also moved to a fresh search
+   * through a snapshot partway through.
+   * @return the cells of the path found, or null if there is none
+   */
+  private static List<String> searchSplitting(DetectionResult puzzle, SequencePermutation permutation) {
+    IterativeSearch search = new IterativeSearch(puzzle.matrix, puzzle.bufferSize);
+    search.start(permutation);
+    ArrayDeque<IterativeSearch.Snapshot> splits = new ArrayDeque<>();
+    IterativeSearch.Status status;
+    while ((status = search.run(7)) == IterativeSearch.Status.SUSPENDED) {
+      IterativeSearch.Snapshot split = search.split();
+      if (split != null)
+        splits.push(split);
+    }
+    if (status == IterativeSearch.Status.FOUND)
+      return cells(search.getPath());
+
+    while (!splits.isEmpty()) {
+      IterativeSearch part = new IterativeSearch(puzzle.matrix, puzzle.bufferSize);
+      part.restore(splits.pop());
+      if (part.run(5) == IterativeSearch.Status.SUSPENDED) {
+        IterativeSearch moved = new IterativeSearch(puzzle.matrix, puzzle.bufferSize);
+        moved.restore(part.snapshot());
+        part = moved;
+      }
+      if (part.run(Long.MAX_VALUE) == IterativeSearch.Status.FOUND)
+        return cells(part.getPath());
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,97 @@
+package com.github.hawkpath.cyberpunk_breach_protocol_solver;
+
+import java.util.Random;
+
+/**
+ * Generates random, reproducible breach protocol puzzles. Matrices use the
+ * same codes the detector recognizes, and sequences are taken from a path a
+ * player could actually walk, so every sequence can be found on its own like
+ * in the game (though not necessarily all of them in one buffer).
+ */
+public class PuzzleGenerator {
+
+  private static final int[] CODES = new int[Detector.possibleCells.size()];
+  static {
+    for (int i=0; i<CODES.length; i++) {
+      CODES[i] = Integer.parseInt(Detector.possibleCells.get(i), 16);
+    }
+  }
+
+  public static final int MIN_SEQUENCE_LENGTH = 2;
+  public static final int MAX_SEQUENCE_LENGTH = 4;
+
+  private final Random random;
+
+  public PuzzleGenerator(long seed) {
+    random = new Random(seed);
+  }
+
+  private int randomCode() {
+    return CODES[random.nextInt(CODES.length)];
+  }
+
+  /**
+   * @param size width and height of the matrix
+   * @param sequenceCount number of sequences
+   * @param bufferSize buffer size, also the length of the path the sequences
+   *                   are taken from
+   */
+  public DetectionResult next(int size, int sequenceCount, int bufferSize) {
+    OCRArray2D matrix = new OCRArray2D();
+    for (int y=0; y<size; y++) {
+      matrix.addRow();
+      for (int x=0; x<size; x++) {
+        matrix.add(randomCode(), null);
+      }
+    }
+
+    int[] path = walk(matrix, size, Math.max(bufferSize, MAX_SEQUENCE_LENGTH));
+
+    OCRArray2D sequences = new OCRArray2D();
+    for (int i=0; i<sequenceCount; i++) {
+      int length = MIN_SEQUENCE_LENGTH
+          + random.nextInt(MAX_SEQUENCE_LENGTH - MIN_SEQUENCE_LENGTH + 1);
+      int start = random.nextInt(path.length - length + 1);
+      sequences.addRow();
+      for (int j=start; j<start+length; j++) {
+        sequences.add(path[j], null);
+      }
+    }
+
+    return new DetectionResult(matrix, sequences, bufferSize);
+  }
+
+  /**
+   * Walk a random path starting in the first row, alternating between rows
+   * and columns without reusing cells
+   * @return the values along the path
+   */
+  private int[] walk(OCRArray2D matrix, int size, int length) {
+    int[] values = new int[length];
+    boolean[] used = new boolean[size * size];
+    int x = 0;
+    int y = 0;
+    for (int i=0; i<length; i++) {
+      boolean horizontal = i % 2 == 0;
+      int next = -1;
+      // Pick a random free cell in the row/column, if any are left
+      for (int tries=0; tries<size && next == -1; tries++) {
+        int candidate = random.nextInt(size);
+        int cell = horizontal ? y * size + candidate : candidate * size + x;
+        if (!used[cell])
+          next = cell;
+      }
+      if (next == -1)
+        // Stuck; fill the rest with random codes
+        values[i] = randomCode();
+      else {
+        used[next] = true;
+        x = next % size;
+        y = next / size;
+        values[i] = matrix.get(x, y).value;
+      }
+    }
+    return values;
+  }
+
+}